@@ -0,0 +1,169 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * AsyncAppender is a class that takes debug messages off the calling thread.
+ * Messages are placed in a fixed size ring buffer and written to a file by a
+ * background thread. A caller never waits: if the ring buffer is full the
+ * message is dropped and counted, and the count is written to the file when
+ * there is room again.
+ */
+package phillockett65.Debug;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+public class AsyncAppender {
+
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final AtomicReferenceArray<String> ring;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long head = 0;
+
+    private final BufferedWriter writer;
+    private final Thread drainer;
+    private volatile boolean running = true;
+
+
+    /************************************************************************
+     * Support code for the background thread.
+     */
+
+    private void write(String line) throws IOException {
+        writer.write(line);
+        writer.newLine();
+    }
+
+    private void drain() {
+        try {
+            while (running || (head != tail.get())) {
+                final long position = head;
+                final int slot = (int)(position & mask);
+                final String line = ring.get(slot);
+                if (line == null) {
+                    // Empty, or a caller has claimed the slot but not yet
+                    // filled it.
+                    writer.flush();
+                    LockSupport.parkNanos(this, IDLE_NANOS);
+
+                    continue;
+                }
+
+                ring.set(slot, null);
+                head = position + 1;
+
+                final long lost = dropped.getAndSet(0);
+                if (lost > 0)
+                    write("Warning: " + lost + " debug messages dropped");
+
+                write(line);
+            }
+
+            final long lost = dropped.getAndSet(0);
+            if (lost > 0)
+                write("Warning: " + lost + " debug messages dropped");
+
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("AsyncAppender: " + e.getMessage());
+        }
+    }
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Open the file for appending and start the background thread.
+     * @param fileName of the log file.
+     * @param capacity of the ring buffer, rounded up to a power of 2.
+     * @throws IOException if the file cannot be opened.
+     */
+    public AsyncAppender(String fileName, int capacity) throws IOException {
+        final int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        ring = new AtomicReferenceArray<String>(size);
+        mask = size - 1;
+
+        writer = Files.newBufferedWriter(Paths.get(fileName), StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+        drainer = new Thread(this::drain, "Debug appender");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Write all queued messages, then stop the background thread and close
+     * the file.
+     */
+    public void close() {
+        running = false;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join();
+            writer.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("AsyncAppender: " + e.getMessage());
+        }
+    }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    public long getDropped() { return dropped.get(); }
+
+    /**
+     * Queue a message without waiting.
+     * @param line to write.
+     * @return true if the message was queued, false if it was dropped.
+     */
+    public boolean append(String line) {
+        long position;
+        do {
+            position = tail.get();
+            if (position - head > mask) {
+                dropped.incrementAndGet();
+
+                return false;
+            }
+        } while (!tail.compareAndSet(position, position + 1));
+
+        ring.set((int)(position & mask), line);
+
+        return true;
+    }
+
+}
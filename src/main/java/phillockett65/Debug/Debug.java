@@ -49,9 +49,20 @@
  * 
  * 7) if all debug, up to and including info, is to be displayed for a class use:
  *      DD = infoLevel();
+ *
+ * Each level also accepts a Supplier or a format string with arguments, so
+ * that the message is only built if it is going to be displayed. Where even
+ * that is too much (e.g. for every key press), guard the call with the
+ * matching isXxxEnabled() method.
+ *
+ * By default messages are written to System.out (System.err for errors)
+ * on the calling thread. startAppender() sends them instead to a file via an
+ * AsyncAppender, which is written on a background thread.
  */
 package phillockett65.Debug;
 
+import java.io.IOException;
+import java.util.function.Supplier;
 
 public class Debug {
 
@@ -100,14 +111,37 @@ public class Debug {
         return pre(level) + ": " + line;
     }
 
+    private static volatile AsyncAppender appender = null;
+
+    private static boolean isEnabled(int level, int delta) {
+        return level-delta <= LEVEL;
+    }
+
+    private static void output(int level, String line) {
+        final String message = formMessage(level, line);
+        final AsyncAppender target = appender;
+        if (target != null)
+            target.append(message);
+        else
+        if (level <= MAJOR)
+            System.err.println(message);
+        else
+            System.out.println(message);
+    }
+
     private static void display(int level, int delta, String line) {
-        if (level-delta <= LEVEL) {
-            final String message = formMessage(level, line);
-            if (level <= MAJOR)
-                System.err.println(message);
-            else
-                System.out.println(message);
-        }
+        if (isEnabled(level, delta))
+            output(level, line);
+    }
+
+    private static void display(int level, int delta, Supplier<String> line) {
+        if (isEnabled(level, delta))
+            output(level, line.get());
+    }
+
+    private static void display(int level, int delta, String format, Object... args) {
+        if (isEnabled(level, delta))
+            output(level, String.format(format, args));
     }
 
 
@@ -191,6 +225,185 @@ public class Debug {
     }
 
 
+    /************************************************************************
+     * Support code for lazily built messages.
+     */
+
+    /**
+     * Log Critical error messsage, only calling the supplier if it will be displayed.
+     * @param delta adjustment, +ve values increase the amount of debug 
+     *              generated, whereas -ve values decrease it.
+     * @param line supplier of the line to log
+     */
+    public static void critical(int delta, Supplier<String> line) {
+        display(CRITICAL, delta, line);
+    }
+
+    /**
+     * Log Critical error messsage, only formatting it if it will be displayed.
+     * @param delta adjustment, +ve values increase the amount of debug 
+     *              generated, whereas -ve values decrease it.
+     * @param format of the line to log, as used by String.format()
+     * @param args referenced by the format
+     */
+    public static void critical(int delta, String format, Object... args) {
+        display(CRITICAL, delta, format, args);
+    }
+
+    /**
+     * Log Major error messsage, only calling the supplier if it will be displayed.
+     * @param delta adjustment, +ve values increase the amount of debug 
+     *              generated, whereas -ve values decrease it.
+     * @param line supplier of the line to log
+     */
+    public static void major(int delta, Supplier<String> line) {
+        display(MAJOR, delta, line);
+    }
+
+    /**
+     * Log Major error messsage, only formatting it if it will be displayed.
+     * @param delta adjustment, +ve values increase the amount of debug 
+     *              generated, whereas -ve values decrease it.
+     * @param format of the line to log, as used by String.format()
+     * @param args referenced by the format
+     */
+    public static void major(int delta, String format, Object... args) {
+        display(MAJOR, delta, format, args);
+    }
+
+    /**
+     * Log Minor error messsage, only calling the supplier if it will be displayed.
+     * @param delta adjustment, +ve values increase the amount of debug 
+     *              generated, whereas -ve values decrease it.
+     * @param line supplier of the line to log
+     */
+    public static void minor(int delta, Supplier<String> line) {
+        display(MINOR, delta, line);
+    }
+
+    /**
+     * Log Minor error messsage, only formatting it if it will be displayed.
+     * @param delta adjustment, +ve values increase the amount of debug 
+     *              generated, whereas -ve values decrease it.
+     * @param format of the line to log, as used by String.format()
+     * @param args referenced by the format
+     */
+    public static void minor(int delta, String format, Object... args) {
+        display(MINOR, delta, format, args);
+    }
+
+    /**
+     * Log Warning messsage, only calling the supplier if it will be displayed.
+     * @param delta adjustment, +ve values increase the amount of debug 
+     *              generated, whereas -ve values decrease it.
+     * @param line supplier of the line to log
+     */
+    public static void warning(int delta, Supplier<String> line) {
+        display(WARNING, delta, line);
+    }
+
+    /**
+     * Log Warning messsage, only formatting it if it will be displayed.
+     * @param delta adjustment, +ve values increase the amount of debug 
+     *              generated, whereas -ve values decrease it.
+     * @param format of the line to log, as used by String.format()
+     * @param args referenced by the format
+     */
+    public static void warning(int delta, String format, Object... args) {
+        display(WARNING, delta, format, args);
+    }
+
+    /**
+     * Log Trace messsage, only calling the supplier if it will be displayed.
+     * @param delta adjustment, +ve values increase the amount of debug 
+     *              generated, whereas -ve values decrease it.
+     * @param line supplier of the line to log
+     */
+    public static void trace(int delta, Supplier<String> line) {
+        display(TRACE, delta, line);
+    }
+
+    /**
+     * Log Trace messsage, only formatting it if it will be displayed.
+     * @param delta adjustment, +ve values increase the amount of debug 
+     *              generated, whereas -ve values decrease it.
+     * @param format of the line to log, as used by String.format()
+     * @param args referenced by the format
+     */
+    public static void trace(int delta, String format, Object... args) {
+        display(TRACE, delta, format, args);
+    }
+
+    /**
+     * Log Informational messsage, only calling the supplier if it will be displayed.
+     * @param delta adjustment, +ve values increase the amount of debug 
+     *              generated, whereas -ve values decrease it.
+     * @param line supplier of the line to log
+     */
+    public static void info(int delta, Supplier<String> line) {
+        display(INFO, delta, line);
+    }
+
+    /**
+     * Log Informational messsage, only formatting it if it will be displayed.
+     * @param delta adjustment, +ve values increase the amount of debug 
+     *              generated, whereas -ve values decrease it.
+     * @param format of the line to log, as used by String.format()
+     * @param args referenced by the format
+     */
+    public static void info(int delta, String format, Object... args) {
+        display(INFO, delta, format, args);
+    }
+
+
+    /************************************************************************
+     * Level guards, for calls on hot paths.
+     */
+
+    public static boolean isCriticalEnabled(int delta) { return isEnabled(CRITICAL, delta); }
+    public static boolean isMajorEnabled(int delta) { return isEnabled(MAJOR, delta); }
+    public static boolean isMinorEnabled(int delta) { return isEnabled(MINOR, delta); }
+    public static boolean isWarningEnabled(int delta) { return isEnabled(WARNING, delta); }
+    public static boolean isTraceEnabled(int delta) { return isEnabled(TRACE, delta); }
+    public static boolean isInfoEnabled(int delta) { return isEnabled(INFO, delta); }
+
+
+    /************************************************************************
+     * Support code for the asynchronous appender.
+     */
+
+    /**
+     * Send all subsequent messages to a file, written on a background thread.
+     * @param fileName of the log file, appended to if it exists.
+     * @param capacity of the ring buffer, messages are dropped when full.
+     * @return true if the appender was started, false otherwise.
+     */
+    public static synchronized boolean startAppender(String fileName, int capacity) {
+        stopAppender();
+        try {
+            appender = new AsyncAppender(fileName, capacity);
+        } catch (IOException e) {
+            critical(0, e.getMessage());
+
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Write any queued messages and revert to System.out and System.err.
+     */
+    public static synchronized void stopAppender() {
+        final AsyncAppender target = appender;
+        if (target == null)
+            return;
+
+        appender = null;
+        target.close();
+    }
+
+
     /************************************************************************
      * Calculate delta values for absolute debugging levels.
      */
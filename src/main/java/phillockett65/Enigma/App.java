@@ -34,8 +34,10 @@ import javafx.scene.input.KeyEvent;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 import phillockett65.Debug.Debug;
+import phillockett65.Metrics.EngineMetrics;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 
 /**
  * JavaFX App
@@ -45,10 +47,26 @@ public class App extends Application {
     // Debug delta used to adjust the local logging level.
     private static final int DD = 0;
 
+    // Optional file to write debug output to, off the FX thread.
+    private static final String DEBUG_FILE = System.getProperty("enigma.debug.file");
+
+    // Optional port for the local EncipherService.
+    private static final Integer SERVICE_PORT = Integer.getInteger("enigma.service.port");
+
+    // Optional channel file for the local SharedMemoryServer.
+    private static final String SHARED_MEMORY_FILE = System.getProperty("enigma.shm.file");
+
     PrimaryController controller;
 
     @Override
     public void start(Stage stage) throws IOException {
+        final long start = System.nanoTime();
+
+        if (DEBUG_FILE != null)
+            Debug.startAppender(DEBUG_FILE, 4096);
+
+        EngineMetrics.register();
+
         FXMLLoader fxmlLoader = new FXMLLoader(App.class.getResource("primary.fxml"));
 
         Parent root = fxmlLoader.load();
@@ -68,7 +86,7 @@ public class App extends Application {
             @Override
             public void handle(KeyEvent event) {
                 final KeyCode keyCode = event.getCode();
-                Debug.trace(DD, "stage.addEventFilter(KeyEvent.KEY_PRESSED, " + keyCode + ", " + event.getCharacter() + ").");
+                Debug.trace(DD, () -> "stage.addEventFilter(KeyEvent.KEY_PRESSED, " + keyCode + ", " + event.getCharacter() + ").");
                 if (keyCode.isLetterKey())
                     controller.keyPress(keyCode);
             }
@@ -78,7 +96,7 @@ public class App extends Application {
             @Override
             public void handle(KeyEvent event) {
                 final KeyCode keyCode = event.getCode();
-                Debug.trace(DD, "stage.addEventFilter(KeyEvent.KEY_RELEASED, " + keyCode + ", " + event.getCharacter() + ").");
+                Debug.trace(DD, () -> "stage.addEventFilter(KeyEvent.KEY_RELEASED, " + keyCode + ", " + event.getCharacter() + ").");
                 if (keyCode.isLetterKey())
                     controller.keyRelease(keyCode);
             }
@@ -87,11 +105,35 @@ public class App extends Application {
         stage.show();
 
         controller.init(stage);
+
+        if (SERVICE_PORT != null)
+            Model.getInstance().startService(SERVICE_PORT);
+        if (SHARED_MEMORY_FILE != null)
+            Model.getInstance().startSharedMemory(SHARED_MEMORY_FILE);
+
+        reportStartup(start);
+    }
+
+    /**
+     * Record how long start up took in the EngineMetrics and the debug 
+     * output, so that it can be compared across workstations.
+     * @param start System.nanoTime() on entry to start().
+     */
+    private static void reportStartup(long start) {
+        final long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        final long elapsed = (System.nanoTime() - start) / 1000000;
+
+        EngineMetrics.getInstance().startup(uptime, elapsed);
+        Debug.info(DD, "Started in %dms, %dms of it in start()", uptime, elapsed);
     }
 
     @Override
     public void stop() throws Exception {
+        Model.getInstance().stopService();
+        Model.getInstance().stopSharedMemory();
+        Model.getInstance().closeProfiles();
         controller.saveState();
+        Debug.stopAppender();
     }
 
     public static void main(String[] args) {
@@ -19,20 +19,20 @@
  */
 
 /*
- * DataStore is a class that serializes the settings data for saving and 
- * restoring to and from disc.
+ * DataStore1 is a class that restores the settings data from the original
+ * Java serialized settings file. It is only used to migrate old settings, 
+ * DataStore2 is used for saving and restoring.
  */
 package phillockett65.Enigma;
 
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.ObjectStreamClass;
 import java.util.ArrayList;
 
 import phillockett65.Debug.Debug;
+import phillockett65.Metrics.SettingsEvent;
 
 public class DataStore1 extends DataStore {
     private static final long serialVersionUID = 1L;
@@ -148,32 +148,6 @@ public class DataStore1 extends DataStore {
      * Support code for static public interface.
      */
 
-    /**
-     * Static method that instantiates a DataStore, populates it from the 
-     * model and writes it to disc.
-     * @return true if data successfully written to disc, false otherwise.
-     */
-    public static boolean writeData() {
-        boolean success = false;
-
-        DataStore1 store = new DataStore1();
-        store.pull();
-        store.dump();
-
-        ObjectOutputStream objectOutputStream;
-        try {
-            objectOutputStream = new ObjectOutputStream(new FileOutputStream(Model.DATAFILE));
-
-            objectOutputStream.writeObject(store);
-            success = true;
-        } catch (IOException e) {
-            // e.printStackTrace();
-            Debug.critical(DD, e.getMessage());
-        }
-
-        return success;
-    }
-
     /**
      * Static method that instantiates a DataStore, populates it from disc 
      * and writes it to the model.
@@ -181,10 +155,12 @@ public class DataStore1 extends DataStore {
      */
     public static boolean readData() {
         boolean success = false;
+        SettingsEvent event = new SettingsEvent();
+        event.begin();
 
         ObjectInputStream objectInputStream;
         try {
-            objectInputStream = new ObjectInputStream(new FileInputStream(Model.DATAFILE));
+            objectInputStream = new ObjectInputStream(new FileInputStream(Model.LEGACYFILE));
 
             DataStore base = (DataStore)objectInputStream.readObject();
             long SVUID = ObjectStreamClass.lookup(base.getClass()).getSerialVersionUID();
@@ -202,6 +178,11 @@ public class DataStore1 extends DataStore {
             Debug.critical(DD, e.getMessage());
         }
 
+        event.file = Model.LEGACYFILE;
+        event.operation = "load";
+        event.success = success;
+        event.commit();
+
         return success;
     }
 
@@ -0,0 +1,451 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * DataStore2 is a class that saves and restores the settings data to and from
+ * disc using a compact, explicitly versioned binary format with a hand written
+ * reader and writer. It holds the same fields as DataStore1, which is now only
+ * used to migrate old Java serialized settings files.
+ *
+ * A DataStore2 can also be loaded without touching the Model, so headless
+ * workers can build an Engine from the saved settings.
+ */
+package phillockett65.Enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+
+import phillockett65.Debug.Debug;
+import phillockett65.Metrics.SettingsEvent;
+
+public class DataStore2 {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    public static final int MAGIC = 0x454E3353;     // "EN3S"
+    public static final int VERSION = 2;
+
+    private static final String CONFIGURABLE = "CONFIGURABLE";
+
+    private double mainX;
+    private double mainY;
+    private double reflectorX;
+    private double reflectorY;
+    private double plugboardX;
+    private double plugboardY;
+
+    private String reflectorChoice = "";
+    private ArrayList<String> pairs;
+
+    private boolean fourthWheel;
+    private boolean show;
+
+    private ArrayList<String> wheels;
+    private ArrayList<Integer> ringSettings;
+    private ArrayList<Integer> rotorOffsets;
+
+    private ArrayList<String> plugs;
+
+
+
+    /************************************************************************
+     * Support code for the Initialization, getters and setters of DataStore2.
+     */
+
+    public DataStore2() {
+        pairs = new ArrayList<String>();
+
+        wheels = new ArrayList<String>();
+        ringSettings = new ArrayList<Integer>();
+        rotorOffsets = new ArrayList<Integer>();
+
+        plugs = new ArrayList<String>();
+    }
+
+    public String getReflectorChoice() { return reflectorChoice; }
+    public ArrayList<String> getPairs() { return pairs; }
+    public boolean isFourthWheel() { return fourthWheel; }
+    public boolean isShow() { return show; }
+    public int getRotorStateCount() { return wheels.size(); }
+    public String getWheel(int index) { return wheels.get(index); }
+    public int getRingSetting(int index) { return ringSettings.get(index); }
+    public int getRotorOffset(int index) { return rotorOffsets.get(index); }
+    public ArrayList<String> getPlugs() { return plugs; }
+
+    /**
+     * Data exchange from the model to this DataStore.
+     * @return true if data successfully pulled from the model, false otherwise.
+     */
+    public boolean pull() {
+        Model model = Model.getInstance();
+        boolean success = true;
+
+        mainX = model.getMainXPos();
+        mainY = model.getMainYPos();
+        reflectorX = model.getReflectorXPos();
+        reflectorY = model.getReflectorYPos();
+        plugboardX = model.getPlugboardXPos();
+        plugboardY = model.getPlugboardYPos();
+
+        reflectorChoice = model.getReflectorChoice();
+
+        pairs = model.getPairText();
+
+        fourthWheel = model.isFourthWheel();
+        show = model.isShow();
+
+        final int rotorStateCount = model.getRotorStateCount();
+        for (int i = 0; i < rotorStateCount; ++i) {
+            wheels.add(model.getWheelChoice(i));
+            ringSettings.add(model.getRingIndex(i));
+            rotorOffsets.add(model.getRotorIndex(i));
+        }
+
+        plugs = model.getPlugText();
+
+        return success;
+    }
+
+    /**
+     * Data exchange from this DataStore to the model.
+     * @return true if data successfully pushed to the model, false otherwise.
+     */
+    public boolean push() {
+        Model model = Model.getInstance();
+
+        model.setMainPos(mainX, mainY);
+        model.setReflectorPos(reflectorX, reflectorY);
+        model.setPlugboardPos(plugboardX, plugboardY);
+
+        return pushMachine();
+    }
+
+    /**
+     * Data exchange of the machine configuration only, i.e. excluding the 
+     * window positions, from this DataStore to the model.
+     * @return true if data successfully pushed to the model, false otherwise.
+     */
+    public boolean pushMachine() {
+        Model model = Model.getInstance();
+        boolean success = true;
+
+        model.initReflectorChoice(reflectorChoice);
+
+        model.initPairText(pairs);
+
+        model.initFourthWheel(fourthWheel);
+        model.setShow(show);
+
+        final int rotorStateCount = wheels.size();
+        for (int i = 0; i < rotorStateCount; ++i) {
+            model.setRotorState(i, wheels.get(i), ringSettings.get(i), rotorOffsets.get(i));
+        }
+
+        model.initPlugText(plugs);
+
+        return success;
+    }
+
+    /**
+     * Build a headless Engine from this DataStore, with the rotor offsets
+     * set to the saved positions.
+     * @return the Engine.
+     */
+    public Engine buildEngine() {
+        final int count = Engine.ROTOR_COUNT;
+        String[] wheelIds = new String[count];
+        int[] rings = new int[count];
+        for (int i = 0; i < count; ++i) {
+            wheelIds[i] = wheels.get(i);
+            rings[i] = ringSettings.get(i);
+        }
+
+        int[] reflectorMap;
+        if (CONFIGURABLE.equals(reflectorChoice)) {
+            reflectorMap = Mapper.deriveReflectorMap(String.join(" ", pairs));
+        } else {
+            RotorData rotor = EnigmaData.findRotorData(reflectorChoice);
+            if (rotor == null)
+                throw new IllegalArgumentException("Unknown Reflector: " + reflectorChoice);
+            reflectorMap = rotor.getMap();
+        }
+
+        int[] plugboardMap = Mapper.derivePlugboardMap(String.join(" ", plugs));
+
+        Engine engine = new Engine(wheelIds, rings, fourthWheel, reflectorMap, plugboardMap);
+        for (int i = 0; i < count; ++i)
+            engine.setOffset(i, rotorOffsets.get(i));
+
+        return engine;
+    }
+
+
+
+    /************************************************************************
+     * Support code for the binary format.
+     */
+
+    private static void writeList(DataOutputStream out, ArrayList<String> list) throws IOException {
+        out.writeShort(list.size());
+        for (String item : list)
+            out.writeUTF(item);
+    }
+
+    private static ArrayList<String> readList(DataInputStream in) throws IOException {
+        final int count = in.readUnsignedShort();
+        ArrayList<String> output = new ArrayList<String>(count);
+        for (int i = 0; i < count; ++i)
+            output.add(in.readUTF());
+
+        return output;
+    }
+
+    /**
+     * Write this DataStore in the current version of the binary format.
+     * @param out stream to write to.
+     * @throws IOException if the stream cannot be written.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+
+        out.writeDouble(mainX);
+        out.writeDouble(mainY);
+        out.writeDouble(reflectorX);
+        out.writeDouble(reflectorY);
+        out.writeDouble(plugboardX);
+        out.writeDouble(plugboardY);
+
+        out.writeUTF(reflectorChoice == null ? "" : reflectorChoice);
+        writeList(out, pairs);
+
+        out.writeBoolean(fourthWheel);
+        out.writeBoolean(show);
+
+        final int rotorStateCount = wheels.size();
+        out.writeByte(rotorStateCount);
+        for (int i = 0; i < rotorStateCount; ++i) {
+            out.writeUTF(wheels.get(i));
+            out.writeByte(ringSettings.get(i));
+            out.writeByte(rotorOffsets.get(i));
+        }
+
+        writeList(out, plugs);
+    }
+
+    /**
+     * Read a DataStore written by write().
+     * @param in stream to read from.
+     * @return the DataStore.
+     * @throws IOException if the stream cannot be read or has an unknown
+     *                     version.
+     */
+    public static DataStore2 read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not an Enigma3 settings file");
+
+        final int version = in.readUnsignedShort();
+        if (version != VERSION)
+            throw new IOException("Unsupported settings version " + version);
+
+        DataStore2 store = new DataStore2();
+
+        store.mainX = in.readDouble();
+        store.mainY = in.readDouble();
+        store.reflectorX = in.readDouble();
+        store.reflectorY = in.readDouble();
+        store.plugboardX = in.readDouble();
+        store.plugboardY = in.readDouble();
+
+        store.reflectorChoice = in.readUTF();
+        store.pairs = readList(in);
+
+        store.fourthWheel = in.readBoolean();
+        store.show = in.readBoolean();
+
+        final int rotorStateCount = in.readUnsignedByte();
+        for (int i = 0; i < rotorStateCount; ++i) {
+            store.wheels.add(in.readUTF());
+            store.ringSettings.add(in.readUnsignedByte());
+            store.rotorOffsets.add(in.readUnsignedByte());
+        }
+
+        store.plugs = readList(in);
+
+        return store;
+    }
+
+    /**
+     * Write this DataStore to a file atomically, by writing a temporary file
+     * and renaming it over the target.
+     * @param path of the settings file.
+     * @throws IOException if the file cannot be written.
+     */
+    public void save(String path) throws IOException {
+        Path target = new File(path).getAbsoluteFile().toPath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            write(out);
+            out.flush();
+            file.getFD().sync();
+        }
+
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Read a DataStore from a file without pushing it to the model.
+     * @param path of the settings file.
+     * @return the DataStore.
+     * @throws IOException if the file cannot be read.
+     */
+    public static DataStore2 load(String path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            return read(in);
+        }
+    }
+
+
+
+    /************************************************************************
+     * Support code for static public interface.
+     */
+
+    /**
+     * Static method that instantiates a DataStore, populates it from the
+     * model and writes it to disc.
+     * @return true if data successfully written to disc, false otherwise.
+     */
+    public static boolean writeData() {
+        boolean success = false;
+        SettingsEvent event = new SettingsEvent();
+        event.begin();
+
+        DataStore2 store = new DataStore2();
+        store.pull();
+        store.dump();
+
+        try {
+            store.save(Model.DATAFILE);
+            success = true;
+        } catch (IOException e) {
+            Debug.critical(DD, e.getMessage());
+        }
+
+        event.file = Model.DATAFILE;
+        event.operation = "save";
+        event.success = success;
+        event.commit();
+
+        return success;
+    }
+
+    /**
+     * Static method that instantiates a DataStore, populates it from disc
+     * and writes it to the model. If there is no settings file, but there is
+     * an old Java serialized one, it is migrated.
+     * @return true if data successfully read from disc, false otherwise.
+     */
+    public static boolean readData() {
+        if (!new File(Model.DATAFILE).exists()) {
+            if (!new File(Model.LEGACYFILE).exists())
+                return false;
+
+            Debug.info(DD, "Migrating " + Model.LEGACYFILE + " to " + Model.DATAFILE);
+            if (!DataStore1.readData())
+                return false;
+
+            writeData();
+
+            return true;
+        }
+
+        boolean success = false;
+        SettingsEvent event = new SettingsEvent();
+        event.begin();
+
+        try {
+            DataStore2 store = load(Model.DATAFILE);
+            success = store.push();
+            store.dump();
+        } catch (IOException e) {
+            Debug.critical(DD, e.getMessage());
+        }
+
+        event.file = Model.DATAFILE;
+        event.operation = "load";
+        event.success = success;
+        event.commit();
+
+        return success;
+    }
+
+
+
+    /************************************************************************
+     * Support code for debug stuff.
+     */
+
+    /**
+      * Print data store on the command line.
+      */
+    private void dump() {
+        Debug.info(DD, "");
+        Debug.info(DD, "mainX = " + mainX);
+        Debug.info(DD, "mainY = " + mainY);
+        Debug.info(DD, "reflectorX = " + reflectorX);
+        Debug.info(DD, "reflectorY = " + reflectorY);
+        Debug.info(DD, "plugboardX = " + plugboardX);
+        Debug.info(DD, "plugboardY = " + plugboardY);
+        Debug.info(DD, "");
+        Debug.info(DD, "reflectorChoice = " + reflectorChoice);
+        Debug.info(DD, "pairs = " + pairs);
+        Debug.info(DD, "");
+        Debug.info(DD, "fourthWheel = " + fourthWheel);
+        Debug.info(DD, "");
+        Debug.info(DD, "wheels = " + wheels);
+        Debug.info(DD, "ringSettings = " + ringSettings);
+        Debug.info(DD, "rotorOffsets = " + rotorOffsets);
+        Debug.info(DD, "");
+        Debug.info(DD, "plugs = " + plugs);
+        Debug.info(DD, "");
+        Debug.info(DD, "show = " + show);
+        Debug.info(DD, "");
+    }
+
+}
@@ -0,0 +1,458 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Engine is a headless equivalent of the translation pipeline in the Model.
+ * It holds the rotor offsets itself instead of in the RotorControl spinners,
+ * so it can be used without JavaFX and by many threads at once (one Engine
+ * per thread). The keyboard and lampboard are straight through (ETW) mappings
+ * and are therefore omitted.
+ */
+package phillockett65.Enigma;
+
+import java.io.IOException;
+
+import phillockett65.Metrics.DoubleStepEvent;
+import phillockett65.Metrics.EncipherEvent;
+import phillockett65.Metrics.EngineMetrics;
+
+public class Engine {
+
+    public static final int SLOW = 0;
+    public static final int LEFT = 1;
+    public static final int MIDDLE = 2;
+    public static final int RIGHT = 3;
+    public static final int ROTOR_COUNT = 4;
+
+    private final String[] wheels = new String[ROTOR_COUNT];
+    private final int[] rings = new int[ROTOR_COUNT];
+    private final Rotor[] rotors = new Rotor[ROTOR_COUNT];
+    private final int[] offsets = new int[ROTOR_COUNT];
+
+    private final boolean fourthWheel;
+    private final int[] reflector;
+    private final int[] plugboard;
+
+    // Cleared for the engines used by the searches, which step far more
+    // often than any operator, so they do not distort the metrics.
+    private boolean metered = true;
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    private static RotorData lookup(String id) {
+        RotorData data = EnigmaData.findRotorData(id);
+        if (data == null)
+            throw new IllegalArgumentException("Unknown Rotor: " + id);
+
+        return data;
+    }
+
+    /**
+     * Constructor.
+     * @param wheels ids of the SLOW, LEFT, MIDDLE and RIGHT rotors.
+     * @param rings ring setting indices of the rotors.
+     * @param fourthWheel true if the SLOW rotor is in use.
+     * @param reflectorMap map of the reflector.
+     * @param plugboardMap map of the plugboard.
+     */
+    public Engine(String[] wheels, int[] rings, boolean fourthWheel,
+        int[] reflectorMap, int[] plugboardMap) {
+
+        for (int i = 0; i < ROTOR_COUNT; ++i) {
+            this.wheels[i] = wheels[i];
+            this.rings[i] = rings[i];
+            rotors[i] = new Rotor(lookup(wheels[i]), rings[i]);
+        }
+
+        this.fourthWheel = fourthWheel;
+        reflector = reflectorMap.clone();
+        plugboard = plugboardMap.clone();
+    }
+
+    /**
+     * Copy constructor, the Rotors are shared as they are not changed.
+     * @param other Engine to copy, including the rotor offsets.
+     */
+    public Engine(Engine other) {
+        this(other, other.reflector, other.plugboard);
+    }
+
+    private Engine(Engine other, int[] reflectorMap, int[] plugboardMap) {
+        for (int i = 0; i < ROTOR_COUNT; ++i) {
+            wheels[i] = other.wheels[i];
+            rings[i] = other.rings[i];
+            rotors[i] = other.rotors[i];
+            offsets[i] = other.offsets[i];
+        }
+
+        fourthWheel = other.fourthWheel;
+        reflector = reflectorMap;
+        plugboard = plugboardMap;
+        metered = other.metered;
+    }
+
+    /**
+     * Select whether this Engine, and any copy made from it, records double
+     * steps and letters in the EngineMetrics.
+     * @param state false for an engine used by a search.
+     */
+    public void setMetered(boolean state) { metered = state; }
+
+    /**
+     * Build a copy of this Engine with a different reflector.
+     * @param reflectorMap map of the reflector.
+     * @return the new Engine.
+     */
+    public Engine withReflector(int[] reflectorMap) {
+        return new Engine(this, reflectorMap.clone(), plugboard);
+    }
+
+    /**
+     * Build a copy of this Engine with a different plugboard.
+     * @param plugboardMap map of the plugboard.
+     * @return the new Engine.
+     */
+    public Engine withPlugboard(int[] plugboardMap) {
+        return new Engine(this, reflector, plugboardMap.clone());
+    }
+
+    /**
+     * Build a copy of this Engine with a different ring setting for one 
+     * rotor.
+     * @param id of the rotor.
+     * @param ring setting index for the rotor.
+     * @return the new Engine.
+     */
+    public Engine withRing(int id, int ring) {
+        Engine output = new Engine(this);
+        output.rings[id] = ring % 26;
+        output.rotors[id] = new Rotor(lookup(wheels[id]), output.rings[id]);
+
+        return output;
+    }
+
+    /**
+     * Build an Engine from a key list entry.
+     * @param settings key list entry.
+     * @param quarter indicator group used for the rotor offsets.
+     * @return the Engine with the rotor offsets set.
+     */
+    public static Engine fromSettings(SettingsData settings, int quarter) {
+        String[] wheels = new String[ROTOR_COUNT];
+        int[] rings = new int[ROTOR_COUNT];
+        for (int i = 0; i < ROTOR_COUNT; ++i) {
+            wheels[i] = settings.getRotor(i);
+            rings[i] = settings.getRingSetting(i);
+        }
+
+        Engine engine = new Engine(wheels, rings, false,
+            Mapper.deriveReflectorMap(settings.getReflector()),
+            Mapper.derivePlugboardMap(settings.getPlugboard()));
+
+        for (int i = 0; i < ROTOR_COUNT; ++i)
+            engine.setOffset(i, settings.getOffset(i, quarter));
+
+        return engine;
+    }
+
+
+    /************************************************************************
+     * Getters and setters support code.
+     */
+
+    public String getWheel(int id) { return wheels[id]; }
+    public int getRing(int id) { return rings[id]; }
+    public Rotor getRotor(int id) { return rotors[id]; }
+    public boolean isFourthWheel() { return fourthWheel; }
+    public int[] getReflectorMap() { return reflector.clone(); }
+    public int[] getPlugboardMap() { return plugboard.clone(); }
+
+    public int getOffset(int id) { return offsets[id]; }
+    public int getCorePosition(int id) { return (offsets[id] - rings[id] + 26) % 26; }
+    public void setOffset(int id, int value) { offsets[id] = value % 26; }
+
+    /**
+     * Connect or disconnect a pair of plugboard sockets in place. The 
+     * plugboard map is shared with copies made by the copy constructor, so
+     * this must only be used on an Engine that has no copies in use, such as
+     * the one owned by the EngineWorker. The scrambler does not include the
+     * plugboard, so tables from buildScramblerTable() remain valid.
+     * @param a index of the pair.
+     * @param b index of the pair.
+     * @param linked true to connect the pair, false to disconnect it.
+     */
+    public void setPlug(int a, int b, boolean linked) {
+        plugboard[a] = linked ? b : a;
+        plugboard[b] = linked ? a : b;
+    }
+
+    public int[] getOffsets() { return offsets.clone(); }
+    public void setOffsets(int[] values) {
+        for (int i = 0; i < ROTOR_COUNT; ++i)
+            setOffset(i, values[i]);
+    }
+
+    /**
+     * Parse the start position of a message, given as the letters of the 
+     * LEFT, MIDDLE and RIGHT rotors, or 4 letters including the SLOW rotor.
+     * @param letters of the start position.
+     * @return the offsets indexed by rotor id, -1 for a rotor not given.
+     * @throws IllegalArgumentException if letters is not 3 or 4 letters.
+     */
+    public static int[] parseStart(String letters) {
+        if ((letters.length() < 3) || (letters.length() > ROTOR_COUNT))
+            throw new IllegalArgumentException("start must be 3 or 4 letters");
+
+        int[] output = { -1, -1, -1, -1 };
+        int id = ROTOR_COUNT - letters.length();
+        for (int i = 0; i < letters.length(); ++i, ++id) {
+            final int offset = Mapper.charToIndex(letters.charAt(i));
+            if ((offset < 0) || (offset >= 26))
+                throw new IllegalArgumentException("start must be 3 or 4 letters");
+            output[id] = offset;
+        }
+
+        return output;
+    }
+
+    /**
+     * Set the rotor offsets to the start position of a message, leaving the
+     * SLOW rotor unchanged if only 3 letters are given.
+     * @param letters of the start position.
+     * @throws IllegalArgumentException if letters is not 3 or 4 letters.
+     */
+    public void setStart(String letters) {
+        final int[] start = parseStart(letters);
+        for (int id = 0; id < ROTOR_COUNT; ++id)
+            if (start[id] != -1)
+                setOffset(id, start[id]);
+    }
+
+
+    /************************************************************************
+     * Translation support code.
+     */
+
+    private void step(int id) { offsets[id] = (offsets[id] + 1) % 26; }
+
+    /**
+     * Advances the right rotor then checks the other rotors. The notch point
+     * of the middle rotor is used to check for a step of the left rotor and
+     * a double step of the middle rotor. The turnover point of the right 
+     * rotor is used to check for a step of the middle rotor.
+     * @return true if the middle rotor double stepped.
+     */
+    private boolean rotate() {
+        boolean doubleStep = false;
+
+        step(RIGHT);
+
+        if (rotors[MIDDLE].isNotchPoint(offsets[MIDDLE])) {
+            step(MIDDLE);
+            step(LEFT);
+            doubleStep = true;
+        }
+
+        if (rotors[RIGHT].isTurnoverPoint(offsets[RIGHT])) {
+            step(MIDDLE);
+        }
+
+        return doubleStep;
+    }
+
+    /**
+     * Advance the rotors as for a key press. A double step is recorded in
+     * the EngineMetrics and as a DoubleStepEvent, unless the Engine is not
+     * metered.
+     */
+    public void advance() {
+        if (!rotate() || !metered)
+            return;
+
+        EngineMetrics.getInstance().doubleStep();
+        DoubleStepEvent event = new DoubleStepEvent();
+        if (event.shouldCommit()) {
+            event.left = offsets[LEFT];
+            event.middle = offsets[MIDDLE];
+            event.right = offsets[RIGHT];
+            event.commit();
+        }
+    }
+
+    /**
+     * Translates an index through the rotors from right to left, i.e. up to
+     * the reflector, using the current rotor offsets.
+     * @param index to translate.
+     * @return the translated index.
+     */
+    public int forward(int index) {
+        index = rotors[RIGHT].translate(Mapper.RIGHT_TO_LEFT, index, offsets[RIGHT]);
+        index = rotors[MIDDLE].translate(Mapper.RIGHT_TO_LEFT, index, offsets[MIDDLE]);
+        index = rotors[LEFT].translate(Mapper.RIGHT_TO_LEFT, index, offsets[LEFT]);
+
+        if (fourthWheel)
+            index = rotors[SLOW].translate(Mapper.RIGHT_TO_LEFT, index, offsets[SLOW]);
+
+        return index;
+    }
+
+    /**
+     * Translates an index through the rotors from left to right, i.e. back
+     * from the reflector, using the current rotor offsets.
+     * @param index to translate.
+     * @return the translated index.
+     */
+    public int backward(int index) {
+        if (fourthWheel)
+            index = rotors[SLOW].translate(Mapper.LEFT_TO_RIGHT, index, offsets[SLOW]);
+
+        index = rotors[LEFT].translate(Mapper.LEFT_TO_RIGHT, index, offsets[LEFT]);
+        index = rotors[MIDDLE].translate(Mapper.LEFT_TO_RIGHT, index, offsets[MIDDLE]);
+        index = rotors[RIGHT].translate(Mapper.LEFT_TO_RIGHT, index, offsets[RIGHT]);
+
+        return index;
+    }
+
+    /**
+     * Translates an index through the rotors and reflector only, i.e. the
+     * scrambler, using the current rotor offsets.
+     * @param index to translate.
+     * @return the translated index.
+     */
+    public int scramble(int index) {
+        return backward(reflector[forward(index)]);
+    }
+
+    /**
+     * Translates an index through the full pipeline using the current rotor
+     * offsets.
+     * @param index to translate.
+     * @return the translated index.
+     */
+    public int translateIndex(int index) {
+        return plugboard[scramble(plugboard[index])];
+    }
+
+    private int traceRotor(StepTrace trace, int id, int direction, int index) throws IOException {
+        final int output = rotors[id].translate(direction, index, offsets[id]);
+        trace.stage(rotors[id].getId(), offsets[id], index, output);
+
+        return output;
+    }
+
+    private static int traceMap(StepTrace trace, String label, int[] map, int index) throws IOException {
+        final int output = map[index];
+        trace.stage(label, StepTrace.NO_OFFSET, index, output);
+
+        return output;
+    }
+
+    /**
+     * Translates an index through the full pipeline, as translateIndex()
+     * does, recording every stage to a StepTrace, including the straight
+     * through keyboard and lampboard.
+     * @param index to translate.
+     * @param trace to record to, the step must already have been begun.
+     * @return the translated index.
+     * @throws IOException if the trace cannot be written.
+     */
+    public int translateIndex(int index, StepTrace trace) throws IOException {
+        trace.stage("Key", StepTrace.NO_OFFSET, index, index);
+        index = traceMap(trace, "Plugboard", plugboard, index);
+
+        index = traceRotor(trace, RIGHT, Mapper.RIGHT_TO_LEFT, index);
+        index = traceRotor(trace, MIDDLE, Mapper.RIGHT_TO_LEFT, index);
+        index = traceRotor(trace, LEFT, Mapper.RIGHT_TO_LEFT, index);
+        if (fourthWheel)
+            index = traceRotor(trace, SLOW, Mapper.RIGHT_TO_LEFT, index);
+
+        index = traceMap(trace, "Reflector", reflector, index);
+
+        if (fourthWheel)
+            index = traceRotor(trace, SLOW, Mapper.LEFT_TO_RIGHT, index);
+        index = traceRotor(trace, LEFT, Mapper.LEFT_TO_RIGHT, index);
+        index = traceRotor(trace, MIDDLE, Mapper.LEFT_TO_RIGHT, index);
+        index = traceRotor(trace, RIGHT, Mapper.LEFT_TO_RIGHT, index);
+
+        index = traceMap(trace, "Plugboard", plugboard, index);
+        trace.stage("Lamp", StepTrace.NO_OFFSET, index, index);
+
+        return index;
+    }
+
+    /**
+     * Advance the Rotors and translate an index (numerical equivalent of the
+     * letter) through the pipeline.
+     * @param index to translate.
+     * @return the translated index.
+     */
+    public int translate(int index) {
+        advance();
+        return translateIndex(index);
+    }
+
+    /**
+     * Translate a block of indices in place. The letters are counted in the
+     * EngineMetrics, but the block is not counted as a message as it may
+     * only be part of one, so the caller records the message when it ends.
+     * @param indices to translate.
+     * @param from first position to translate.
+     * @param to position after the last to translate.
+     */
+    public void translate(int[] indices, int from, int to) {
+        EncipherEvent event = new EncipherEvent();
+        event.begin();
+
+        for (int i = from; i < to; ++i)
+            indices[i] = translate(indices[i]);
+
+        if (metered)
+            EngineMetrics.getInstance().letters(to - from);
+        event.length = to - from;
+        event.commit();
+    }
+
+    /**
+     * Build the scrambler permutation for each of the next length positions.
+     * Entry (position * 26 + index) holds the scrambler output for index at
+     * that position. The plugboard is not included, so the table can be
+     * reused for every candidate plugboard. The rotors are left advanced by
+     * length steps. Nothing is recorded in the EngineMetrics, as the table
+     * is only built by the searches.
+     * @param length number of positions.
+     * @return the scrambler table.
+     */
+    public int[] buildScramblerTable(int length) {
+        int[] table = new int[length * 26];
+
+        for (int position = 0; position < length; ++position) {
+            rotate();
+            final int base = position * 26;
+            for (int index = 0; index < 26; ++index)
+                table[base + index] = scramble(index);
+        }
+
+        return table;
+    }
+
+}
@@ -0,0 +1,397 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EngineWorker is a class that runs an Engine on its own thread, so that key
+ * presses never wait for enciphering on the FX thread. Key presses and
+ * configuration changes are passed to the worker, in order, through a
+ * single-producer single-consumer lock-free queue. Results are collected into
+ * batches which are passed back through a second queue. On the FX thread an
+ * AnimationTimer, which only runs while there are results, delivers every
+ * batch to the Listener and then asks it to refresh the display once per
+ * pulse with the latest result, however many keys were processed.
+ *
+ * Commands that do not fit in the queue are held on the FX thread and passed
+ * on as space becomes available, so no key press is ever dropped.
+ */
+package phillockett65.Enigma;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import phillockett65.Debug.Debug;
+import phillockett65.Metrics.EngineMetrics;
+
+public class EngineWorker {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    private static final int QUEUE_SIZE = 4096;
+    private static final int BATCH_SIZE = 256;
+    private static final long RETRY_NANOS = 1000000;
+
+    private static final Object STOP = new Object();
+
+    /**
+     * Listener is called on the FX thread with the results.
+     */
+    public interface Listener {
+        /**
+         * Called with each batch of results, in order.
+         * @param results packed results.
+         * @param count of results.
+         */
+        default void results(int[] results, int count) {}
+
+        /**
+         * Called at most once per pulse, after the batches.
+         * @param latest packed result.
+         */
+        void refresh(int latest);
+    }
+
+    /**
+     * Job is a longer piece of work, such as a whole message, run on the
+     * worker thread in order with the key presses. The Job may advance the
+     * Engine, and is responsible for reporting its own results.
+     */
+    public interface Job {
+        void run(Engine engine);
+    }
+
+    /**
+     * Rewire replaces the wiring of the Engine, keeping the rotor offsets 
+     * the worker has reached.
+     */
+    private static class Rewire {
+        final Engine engine;
+
+        Rewire(Engine engine) {
+            this.engine = engine;
+        }
+    }
+
+    private static class Batch {
+        final int[] results = new int[BATCH_SIZE];
+        int count = 0;
+    }
+
+    private final SpscQueue<Object> commands = new SpscQueue<Object>(QUEUE_SIZE);
+    private final SpscQueue<Batch> results = new SpscQueue<Batch>(QUEUE_SIZE);
+    private final ArrayDeque<Object> pending = new ArrayDeque<Object>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Listener listener;
+    private final Thread thread;
+    private final AnimationTimer timer;
+
+    // Only used by the worker thread.
+    private Engine engine;
+    private StepTrace trace = null;
+    private int position = 0;
+
+
+    /************************************************************************
+     * Support code for the packed results.
+     */
+
+    /**
+     * Pack a result into an int: the key, the lamp and the rotor offsets
+     * after the key press, 5 bits each.
+     */
+    private static int pack(int key, int lamp, Engine engine) {
+        int output = 0;
+        for (int i = 0; i < Engine.ROTOR_COUNT; ++i)
+            output = (output << 5) | engine.getOffset(i);
+
+        return (((output << 5) | lamp) << 5) | key;
+    }
+
+    public static int getKey(int result) { return result & 0x1F; }
+    public static int getLamp(int result) { return (result >> 5) & 0x1F; }
+    public static int getOffset(int result, int id) {
+        return (result >> (10 + 5 * (Engine.ROTOR_COUNT - 1 - id))) & 0x1F;
+    }
+
+
+    /************************************************************************
+     * Support code for the worker thread.
+     */
+
+    private void setTrace(boolean state) {
+        try {
+            if (state && (trace == null)) {
+                trace = new StepTrace(Model.TRACEFILE);
+                position = 0;
+            } else
+            if (!state && (trace != null)) {
+                trace.close();
+                trace = null;
+            }
+        } catch (IOException e) {
+            Debug.critical(DD, e.getMessage());
+            trace = null;
+        }
+    }
+
+    private int translate(int key) {
+        if (trace == null)
+            return engine.translate(key);
+
+        engine.advance();
+        try {
+            trace.begin(position++);
+
+            return engine.translateIndex(key, trace);
+        } catch (IOException e) {
+            Debug.critical(DD, e.getMessage());
+            setTrace(false);
+        }
+
+        return engine.translateIndex(key);
+    }
+
+    private void publish(Batch batch) {
+        while (!results.offer(batch))
+            LockSupport.parkNanos(this, RETRY_NANOS);
+
+        if (scheduled.compareAndSet(false, true))
+            Platform.runLater(timer::start);
+    }
+
+    private void run() {
+        Batch batch = new Batch();
+        while (true) {
+            final Object command = commands.poll();
+            if (command == null) {
+                if (batch.count > 0) {
+                    publish(batch);
+                    batch = new Batch();
+                }
+                LockSupport.park(this);
+
+                continue;
+            }
+
+            if (command == STOP)
+                break;
+
+            if (command instanceof Integer) {
+                final int key = (Integer)command;
+                final int lamp = translate(key);
+                EngineMetrics.getInstance().letter();
+
+                batch.results[batch.count++] = pack(key, lamp, engine);
+                if (batch.count == BATCH_SIZE) {
+                    publish(batch);
+                    batch = new Batch();
+                }
+            } else
+            if (command instanceof Engine) {
+                engine = (Engine)command;
+            } else
+            if (command instanceof Rewire) {
+                final Engine next = ((Rewire)command).engine;
+                next.setOffsets(engine.getOffsets());
+                engine = next;
+            } else
+            if (command instanceof Boolean) {
+                setTrace((Boolean)command);
+            } else
+            if (command instanceof Job) {
+                if (batch.count > 0) {
+                    publish(batch);
+                    batch = new Batch();
+                }
+                ((Job)command).run(engine);
+            }
+        }
+
+        if (batch.count > 0)
+            publish(batch);
+
+        setTrace(false);
+    }
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param engine to start with, used only by the worker from now on.
+     * @param trace true if each translation step is to be recorded.
+     * @param listener to receive the results on the FX thread.
+     */
+    public EngineWorker(Engine engine, boolean trace, Listener listener) {
+        this.engine = engine;
+        this.listener = listener;
+
+        timer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                pulse();
+            }
+        };
+
+        if (trace)
+            queue(Boolean.TRUE);
+
+        thread = new Thread(this::run, "Engine worker");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Process all outstanding commands, stop the worker and deliver the
+     * remaining results. Called on the FX thread.
+     */
+    public void close() {
+        queue(STOP);
+        while (thread.isAlive()) {
+            deliver();
+            try {
+                thread.join(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                break;
+            }
+        }
+        deliver();
+        timer.stop();
+    }
+
+
+    /************************************************************************
+     * Support code for the FX thread.
+     */
+
+    private void flushPending() {
+        while (!pending.isEmpty() && commands.offer(pending.peek()))
+            pending.poll();
+    }
+
+    private void queue(Object command) {
+        if (pending.isEmpty() && commands.offer(command)) {
+            LockSupport.unpark(thread);
+
+            return;
+        }
+
+        pending.add(command);
+        flushPending();
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Pass any held commands to the worker and deliver all published
+     * results to the Listener, followed by a single refresh.
+     * @return true if any results were delivered, false otherwise.
+     */
+    private boolean deliver() {
+        if (!pending.isEmpty()) {
+            flushPending();
+            LockSupport.unpark(thread);
+        }
+
+        boolean delivered = false;
+        int latest = 0;
+
+        Batch batch;
+        while ((batch = results.poll()) != null) {
+            listener.results(batch.results, batch.count);
+            latest = batch.results[batch.count - 1];
+            delivered = true;
+        }
+
+        if (delivered)
+            listener.refresh(latest);
+
+        return delivered;
+    }
+
+    /**
+     * Called by the AnimationTimer on each pulse. The timer is stopped once a
+     * pulse finds nothing to deliver, and restarted by the worker when it
+     * next publishes a batch.
+     */
+    private void pulse() {
+        if (deliver())
+            return;
+
+        scheduled.set(false);
+
+        // Keep running if the worker published after deliver() looked.
+        if (results.isEmpty() || !scheduled.compareAndSet(false, true))
+            timer.stop();
+    }
+
+    /**
+     * Queue a key press.
+     * @param index (0..25) of the key pressed.
+     */
+    public void submit(int index) { queue(Integer.valueOf(index)); }
+
+    /**
+     * Queue a configuration change, applied after all earlier key presses.
+     * The rotor offsets are replaced too, so only use this for an explicit 
+     * change of the offsets.
+     * @param engine with the new configuration and rotor offsets.
+     */
+    public void reconfigure(Engine engine) { queue(engine); }
+
+    /**
+     * Queue a change to the wiring (rotors, rings, reflector or plugboard), 
+     * applied after all earlier key presses. The rotor offsets the worker 
+     * has reached are kept, as the spinners may not have caught up yet.
+     * @param engine with the new wiring, its rotor offsets are ignored.
+     */
+    public void rewire(Engine engine) { queue(new Rewire(engine)); }
+
+    /**
+     * Queue a change to the recording of translation steps.
+     * @param state true to record to Model.TRACEFILE, false to stop.
+     */
+    public void showSteps(boolean state) { queue(Boolean.valueOf(state)); }
+
+    /**
+     * Queue the connection or disconnection of a single plugboard pair, 
+     * applied in place to the Engine after all earlier key presses.
+     * @param a index of the pair.
+     * @param b index of the pair.
+     * @param linked true to connect the pair, false to disconnect it.
+     */
+    public void setPlug(int a, int b, boolean linked) {
+        queue((Job)engine -> engine.setPlug(a, b, linked));
+    }
+
+    /**
+     * Queue a Job, run after all earlier key presses.
+     * @param job to run on the worker thread.
+     */
+    public void run(Job job) { queue(job); }
+
+}
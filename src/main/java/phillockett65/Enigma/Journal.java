@@ -0,0 +1,361 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Journal is a class that records key presses and configuration changes in
+ * an append-only file, so that the machine state can be recovered after a
+ * crash. The first record of a journal is always a snapshot of the machine
+ * configuration, so a journal is self contained and is replayed on top of
+ * whatever settings were loaded.
+ *
+ * The records are in the order the EngineWorker sees them. A wiring change
+ * is recorded without the rotor offsets, as the spinners may lag behind the
+ * key presses already recorded. A job is marked when it is queued, and its
+ * final offsets are recorded when it is done, so that replay can apply them
+ * before any key presses queued behind it.
+ *
+ * Records are queued by the caller (normally the FX thread) without blocking
+ * and written by a background thread through a buffered FileChannel. The
+ * channel is forced once each time the queue is drained, so a burst of key
+ * presses is committed together.
+ *
+ * Record format: type (byte), payload length (unsigned short), payload.
+ */
+package phillockett65.Enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import phillockett65.Debug.Debug;
+
+public class Journal implements Closeable {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    private static final byte KEY = 1;
+    private static final byte SNAPSHOT = 2;
+    private static final byte WIRING = 3;
+    private static final byte JOB = 4;
+    private static final byte DONE = 5;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    // Key records never change, so one is shared per letter.
+    private static final byte[][] KEYS = new byte[26][];
+    private static final byte[] JOB_RECORD = new byte[] { JOB, 0, 0 };
+
+    static {
+        for (int i = 0; i < KEYS.length; ++i)
+            KEYS[i] = new byte[] { KEY, 0, 1, (byte)i };
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ConcurrentLinkedQueue<byte[]> queue = new ConcurrentLinkedQueue<byte[]>();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Thread writer;
+
+    private volatile boolean running = true;
+    private volatile IOException failure = null;
+
+
+    /************************************************************************
+     * Support code for the background writer.
+     */
+
+    private void flush(boolean commit) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+
+        if (commit)
+            channel.force(false);
+    }
+
+    private void write() {
+        try {
+            boolean dirty = false;
+            while (running || !queue.isEmpty()) {
+                byte[] record = queue.poll();
+                if (record == null) {
+                    if (dirty) {
+                        flush(true);
+                        dirty = false;
+                    }
+                    LockSupport.parkNanos(this, IDLE_NANOS);
+
+                    continue;
+                }
+
+                if (buffer.remaining() < record.length)
+                    flush(false);
+
+                if (record.length > buffer.capacity()) {
+                    channel.write(ByteBuffer.wrap(record));
+                } else {
+                    buffer.put(record);
+                }
+                dirty = true;
+            }
+
+            flush(true);
+        } catch (IOException e) {
+            failure = e;
+            Debug.critical(DD, "Journal: " + e.getMessage());
+        }
+    }
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Start a new journal, replacing any existing one. The first record is a
+     * snapshot of the machine configuration.
+     * @param fileName of the journal.
+     * @param snapshot of the current machine configuration.
+     * @throws IOException if the journal cannot be created.
+     */
+    public Journal(String fileName, DataStore2 snapshot) throws IOException {
+        path = new File(fileName).getAbsoluteFile().toPath();
+        channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        snapshot(snapshot);
+
+        writer = new Thread(this::write, "Journal writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stop the background writer after it has written all queued records,
+     * then delete the journal. Called once the settings have been saved. A
+     * write failure has already been reported by the writer.
+     * @throws IOException if the journal could not be deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+
+
+    /************************************************************************
+     * Support code for recording.
+     */
+
+    private void queue(byte[] record) {
+        // The writer has stopped and already reported the failure.
+        if (failure != null)
+            return;
+
+        queue.offer(record);
+        if (writer != null)
+            LockSupport.unpark(writer);
+    }
+
+    /**
+     * Record a key press. Never blocks.
+     * @param index (0..25) of the key pressed.
+     */
+    public void key(int index) {
+        queue(KEYS[index]);
+    }
+
+    private void configuration(byte type, DataStore2 store) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type);
+            out.writeShort(0);
+            store.write(out);
+        } catch (IOException e) {
+            Debug.critical(DD, "Journal: " + e.getMessage());
+
+            return;
+        }
+
+        byte[] record = bytes.toByteArray();
+        final int length = record.length - 3;
+        record[1] = (byte)(length >> 8);
+        record[2] = (byte)length;
+        queue(record);
+    }
+
+    /**
+     * Record a configuration change, including the rotor offsets, as a full
+     * snapshot. Never blocks.
+     * @param store snapshot of the machine configuration.
+     */
+    public void snapshot(DataStore2 store) {
+        configuration(SNAPSHOT, store);
+    }
+
+    /**
+     * Record a change of the wiring. The rotor offsets in the store are 
+     * ignored on replay, which keeps the offsets reached so far. Never 
+     * blocks.
+     * @param store snapshot of the machine configuration.
+     */
+    public void wiring(DataStore2 store) {
+        configuration(WIRING, store);
+    }
+
+    /**
+     * Record that a job has been queued for the EngineWorker. Never blocks.
+     */
+    public void job() {
+        queue(JOB_RECORD);
+    }
+
+    /**
+     * Record the rotor offsets reached by the earliest job not yet done.
+     * Never blocks.
+     * @param offsets of the rotors after the job.
+     */
+    public void jobDone(int[] offsets) {
+        byte[] record = new byte[3 + Engine.ROTOR_COUNT];
+        record[0] = DONE;
+        record[2] = (byte)Engine.ROTOR_COUNT;
+        for (int i = 0; i < Engine.ROTOR_COUNT; ++i)
+            record[3 + i] = (byte)offsets[i];
+        queue(record);
+    }
+
+
+    /************************************************************************
+     * Support code for replaying.
+     */
+
+    private static class Record {
+        final int type;
+        final byte[] payload;
+
+        Record(int type, byte[] payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Replay a journal left behind by a crash. A truncated final record is
+     * ignored. The key presses step a headless Engine, so the caller only 
+     * needs to move the rotors once, to the offsets it reaches.
+     * @param fileName of the journal.
+     * @param onConfiguration called for each configuration snapshot and 
+     *                        wiring change.
+     * @return the Engine at the offsets reached, null if there is no journal.
+     */
+    public static Engine replay(String fileName, Consumer<DataStore2> onConfiguration) {
+        File file = new File(fileName);
+        if (!file.exists())
+            return null;
+
+        // Jobs finish in the order they were queued, so the offsets recorded
+        // when each is done are applied at the position of its marker.
+        ArrayList<Record> records = new ArrayList<Record>();
+        ArrayList<int[]> done = new ArrayList<int[]>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                final int type = in.read();
+                if (type == -1)
+                    break;
+
+                final int length = in.readUnsignedShort();
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+
+                if (type == DONE) {
+                    int[] offsets = new int[Engine.ROTOR_COUNT];
+                    for (int i = 0; i < offsets.length; ++i)
+                        offsets[i] = payload[i];
+                    done.add(offsets);
+                } else {
+                    records.add(new Record(type, payload));
+                }
+            }
+        } catch (EOFException e) {
+            Debug.warning(DD, "Journal: ignoring truncated record");
+        } catch (IOException e) {
+            Debug.critical(DD, "Journal: " + e.getMessage());
+        }
+
+        Engine engine = null;
+        int jobs = 0;
+        try {
+            for (Record record : records) {
+                if (record.type == KEY) {
+                    if (engine != null)
+                        engine.advance();
+                } else if ((record.type == SNAPSHOT) || (record.type == WIRING)) {
+                    DataStore2 store = DataStore2.read(new DataInputStream(new ByteArrayInputStream(record.payload)));
+                    onConfiguration.accept(store);
+
+                    Engine next = store.buildEngine();
+                    if ((record.type == WIRING) && (engine != null))
+                        next.setOffsets(engine.getOffsets());
+                    engine = next;
+                } else if (record.type == JOB) {
+                    // A job still running at the crash has unknown offsets.
+                    if ((jobs < done.size()) && (engine != null))
+                        engine.setOffsets(done.get(jobs));
+                    ++jobs;
+                }
+            }
+        } catch (IOException e) {
+            Debug.critical(DD, "Journal: " + e.getMessage());
+        }
+
+        Debug.warning(DD, "Journal: replayed " + (records.size() + done.size()) + " records");
+
+        return engine;
+    }
+
+}
@@ -159,6 +159,36 @@ public class Mapper {
 
     public void setOffset(int value) {}
 
+    /**
+     * Connect 2 indices that currently map to themselves, as a plugboard 
+     * cable does, updating the map in place.
+     * @param a index to connect.
+     * @param b index to connect.
+     */
+    public void link(int a, int b) {
+        map[a] = b;
+        map[b] = a;
+        rightMap[a] = b;
+        rightMap[b] = a;
+        leftMap[a] = b;
+        leftMap[b] = a;
+    }
+
+    /**
+     * Disconnect 2 indices that currently map to each other, so that both 
+     * map to themselves, updating the map in place.
+     * @param a index to disconnect.
+     * @param b index to disconnect.
+     */
+    public void unlink(int a, int b) {
+        map[a] = a;
+        map[b] = b;
+        rightMap[a] = a;
+        rightMap[b] = b;
+        leftMap[a] = a;
+        leftMap[b] = b;
+    }
+
     /**
      * Translates (swaps) an index (numerical equivalent of the letter) to 
      * another using the map.
@@ -188,6 +218,17 @@ public class Mapper {
         return new Pair<Integer, String>(output, message);
     }
 
+    /**
+     * Translates an index (numerical equivalent of the letter) to another 
+     * using the map, without building the translation String.
+     * @param direction of mapping.
+     * @param index to translate.
+     * @return the translated index.
+     */
+    public int translate(int direction, int index) {
+        return swapWorker(direction, index);
+    }
+
 
     /************************************************************************
      * Mapping support code.
@@ -204,7 +245,7 @@ public class Mapper {
         int[] output = new int[length];
 
         for (int i = 0; i < length; ++i) {
-            output[i] = i;
+            output[i] = 0;
         }
 
         return output;
@@ -260,7 +301,8 @@ public class Mapper {
         String regex = "[\\s]";
         String[] words = wordString.split(regex);
         for (String word : words) {
-            output.add(word);
+            if (!word.isEmpty())
+                output.add(word);
         }
 
         return output;
@@ -0,0 +1,505 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Pop-up window that enciphers a whole message, pasted in or loaded from a
+ * file, instead of one key press at a time. The message is enciphered on the
+ * EngineWorker thread, in order with any earlier key presses, in chunks so
+ * that progress can be shown and the work cancelled between chunks. Files
+ * are read a chunk at a time, so only the enciphered letters are held. The
+ * output is shown in 5 letter groups in a ListView, which only builds cells
+ * for the visible lines however long the message is. When the work finishes,
+ * or is cancelled, the rotors are left at the final position.
+ */
+package phillockett65.Enigma;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.TextArea;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Line;
+import javafx.scene.shape.StrokeLineCap;
+import javafx.stage.FileChooser;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+import phillockett65.Debug.Debug;
+import phillockett65.Metrics.EngineMetrics;
+
+public class MessageControl extends Stage {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    private static final String TOPBARICON = "top-bar-icon";
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final int GROUP_SIZE = 5;
+    private static final int GROUPS_PER_LINE = 10;
+    private static final int LINE_SIZE = GROUP_SIZE * GROUPS_PER_LINE;
+
+    private final Model model;
+
+    private TextArea input;
+    private Label info;
+    private Button load;
+    private Button save;
+    private Button encipher;
+    private Button cancel;
+    private ProgressBar progress;
+    private ListView<Integer> output;
+    private final ObservableList<Integer> lines = FXCollections.observableArrayList();
+
+    private double x = 0.0;
+    private double y = 0.0;
+
+    private Path file = null;
+    private MessageJob job = null;
+
+    // Enciphered letters in blocks of CHUNK_SIZE, only used on the FX thread.
+    private final ArrayList<byte[]> letters = new ArrayList<>();
+    private int letterCount = 0;
+    private long inputSize = 0;
+
+
+    /************************************************************************
+     * Support code for the message job.
+     */
+
+    private static boolean isLetter(char c) {
+        final int index = Mapper.charToIndex(c);
+
+        return (index >= 0) && (index < 26);
+    }
+
+    /**
+     * MessageJob enciphers the letters of a message on the EngineWorker
+     * thread, ignoring everything else, and reports back to the FX thread
+     * after each chunk.
+     */
+    private class MessageJob implements EngineWorker.Job {
+        private final String text;
+        private final Path source;
+        private volatile boolean cancelled = false;
+
+        MessageJob(String text, Path source) {
+            this.text = text;
+            this.source = source;
+        }
+
+        void cancel() { cancelled = true; }
+
+        private Reader open() throws IOException {
+            if (source == null)
+                return new StringReader(text);
+
+            return Files.newBufferedReader(source, StandardCharsets.UTF_8);
+        }
+
+        private long size() {
+            if (source == null)
+                return text.length();
+
+            try {
+                return Files.size(source);
+            } catch (IOException e) {
+                Debug.critical(DD, e.getMessage());
+            }
+
+            return 0;
+        }
+
+        @Override
+        public void run(Engine engine) {
+            final long size = size();
+            Platform.runLater(() -> started(this, size));
+
+            final char[] buffer = new char[CHUNK_SIZE];
+            final int[] indices = new int[CHUNK_SIZE];
+            long read = 0;
+            long nanos = 0;
+            try (Reader reader = open()) {
+                int length;
+                while (!cancelled && ((length = reader.read(buffer)) != -1)) {
+                    read += length;
+
+                    int count = 0;
+                    for (int i = 0; i < length; ++i)
+                        if (isLetter(buffer[i]))
+                            indices[count++] = Mapper.charToIndex(buffer[i]);
+
+                    final long start = System.nanoTime();
+                    engine.translate(indices, 0, count);
+                    nanos += System.nanoTime() - start;
+
+                    final byte[] output = new byte[count];
+                    for (int i = 0; i < count; ++i)
+                        output[i] = (byte)Mapper.indexToChar(indices[i]);
+
+                    final long position = read;
+                    Platform.runLater(() -> progressed(this, output, position));
+                }
+            } catch (IOException e) {
+                Debug.critical(DD, e.getMessage());
+            }
+
+            // The chunks only count the letters, the message is counted once
+            // it is complete.
+            if (!cancelled)
+                EngineMetrics.getInstance().message(nanos);
+
+            final int[] offsets = engine.getOffsets();
+            Platform.runLater(() -> finished(this, offsets));
+        }
+    }
+
+
+    /************************************************************************
+     * Support code for the FX thread side of the job.
+     */
+
+    private void syncUI() {
+        final boolean running = job != null;
+
+        input.setDisable(running || (file != null));
+        load.setDisable(running);
+        save.setDisable(running || (letterCount == 0));
+        encipher.setDisable(running);
+        cancel.setDisable(!running);
+    }
+
+    private void started(MessageJob source, long size) {
+        if (source != job)
+            return;
+
+        letters.clear();
+        letterCount = 0;
+        inputSize = size;
+        lines.clear();
+        info.setText("0 letters");
+    }
+
+    private void progressed(MessageJob source, byte[] output, long position) {
+        if (source != job)
+            return;
+
+        // Append to the blocks, starting a new block when the last is full.
+        int from = 0;
+        while (from < output.length) {
+            final int offset = letterCount % CHUNK_SIZE;
+            if (offset == 0)
+                letters.add(new byte[CHUNK_SIZE]);
+
+            final int count = Math.min(output.length - from, CHUNK_SIZE - offset);
+            System.arraycopy(output, from, letters.get(letters.size() - 1), offset, count);
+            from += count;
+            letterCount += count;
+        }
+
+        // The file size is in bytes and the position in characters, so this
+        // is an estimate for anything other than ASCII.
+        progress.setProgress(inputSize == 0 ? 1.0 : Math.min(1.0, (double)position / inputSize));
+        info.setText(letterCount + " letters");
+
+        // Only add complete lines, as a partial line would not be redrawn.
+        final int complete = letterCount / LINE_SIZE;
+        for (int line = lines.size(); line < complete; ++line)
+            lines.add(line);
+    }
+
+    private void finished(MessageJob source, int[] offsets) {
+        model.jobDone(offsets);
+        if (source != job)
+            return;
+
+        for (int line = lines.size(); line * LINE_SIZE < letterCount; ++line)
+            lines.add(line);
+
+        if (source.cancelled)
+            info.setText("Cancelled after " + letterCount + " letters");
+        else
+            progress.setProgress(1.0);
+
+        job = null;
+        syncUI();
+    }
+
+    private void start() {
+        progress.setProgress(0.0);
+        job = new MessageJob(input.getText(), file);
+        model.runJob(job);
+        syncUI();
+    }
+
+    private void stop() {
+        if (job != null)
+            job.cancel();
+    }
+
+    private String getLine(int line) {
+        final int from = line * LINE_SIZE;
+        final int to = Math.min(from + LINE_SIZE, letterCount);
+
+        StringBuilder builder = new StringBuilder(LINE_SIZE + GROUPS_PER_LINE);
+        for (int i = from; i < to; ++i) {
+            if ((i > from) && ((i - from) % GROUP_SIZE == 0))
+                builder.append(' ');
+            builder.append((char)letters.get(i / CHUNK_SIZE)[i % CHUNK_SIZE]);
+        }
+
+        return builder.toString();
+    }
+
+    private void loadFile() {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Load Message");
+        File selected = chooser.showOpenDialog(this);
+        if (selected == null)
+            return;
+
+        file = selected.toPath();
+        input.clear();
+        info.setText(selected.getName());
+        syncUI();
+    }
+
+    private void saveFile() {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Save Enciphered Message");
+        File selected = chooser.showSaveDialog(this);
+        if (selected == null)
+            return;
+
+        StringBuilder text = new StringBuilder(letterCount + letterCount / GROUP_SIZE + 1);
+        for (int line = 0; line * LINE_SIZE < letterCount; ++line)
+            text.append(getLine(line)).append(System.lineSeparator());
+
+        try {
+            Files.writeString(selected.toPath(), text, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            Debug.critical(DD, e.getMessage());
+        }
+    }
+
+
+    /************************************************************************
+     * Support code for the window layout.
+     */
+
+    /**
+     * Builds the cancel button as a Pane and includes the mouse click handler.
+     * @return the Pane that represents the cancel button.
+     */
+    private Pane buildCancel() {
+        final double cancelPadding = 0.3;
+        final double iconSize = 28.0;
+    
+        Pane close = new Pane();
+        close.setPrefWidth(iconSize);
+        close.setPrefHeight(iconSize);
+        close.getStyleClass().add(TOPBARICON);
+
+        double a = iconSize * cancelPadding;
+        double b = iconSize - a;
+        Line line1 = new Line(a, a, b, b);
+        line1.setStroke(Color.WHITE);
+        line1.setStrokeWidth(4.0);
+        line1.setStrokeLineCap(StrokeLineCap.ROUND);
+
+        Line line2 = new Line(a, b, b, a);
+        line2.setStroke(Color.WHITE);
+        line2.setStrokeWidth(4.0);
+        line2.setStrokeLineCap(StrokeLineCap.ROUND);
+
+        close.getChildren().addAll(line1, line2);
+
+        close.setOnMouseClicked(event -> {
+            stop();
+            close();
+        });
+
+        return close;
+    }
+
+    /**
+     * Builds the top-bar as a HBox and includes the cancel button the mouse 
+     * press and drag handlers.
+     * @return the HBox that represents the top-bar.
+     */
+    private HBox buildTopBar() {
+        HBox topBar = new HBox();
+        topBar.getStyleClass().add("top-bar");
+
+        // Make window dragable.
+        topBar.setOnMousePressed(mouseEvent -> {
+            x = mouseEvent.getSceneX();
+            y = mouseEvent.getSceneY();
+        });
+
+        topBar.setOnMouseDragged(mouseEvent -> {
+            this.setX(mouseEvent.getScreenX() - x);
+            this.setY(mouseEvent.getScreenY() - y);
+        });
+
+        Label heading = new Label(" Encipher Message");
+        heading.getStyleClass().add("heading");
+        Region region = new Region();
+
+        topBar.getChildren().add(heading);
+        topBar.getChildren().add(region);
+        HBox.setHgrow(region, Priority.ALWAYS);
+        topBar.getChildren().add(buildCancel());
+
+        return topBar;
+    }
+
+    /**
+     * Builds the options buttons as a HBox and includes the action event 
+     * handlers.
+     * @return the HBox that represents the options buttons.
+     */
+    private HBox buildOptions() {
+        HBox options = new HBox();
+        options.setSpacing(8.0);
+
+        load = new Button("Load");
+        Button clear = new Button("Clear");
+        info = new Label();
+        Region region = new Region();
+        encipher = new Button("Encipher");
+        cancel = new Button("Cancel");
+        save = new Button("Save");
+
+        load.setOnAction(event -> loadFile());
+        clear.setOnAction(event -> {
+            file = null;
+            input.clear();
+            info.setText("");
+            syncUI();
+        });
+        encipher.setOnAction(event -> start());
+        cancel.setOnAction(event -> stop());
+        save.setOnAction(event -> saveFile());
+
+        load.setTooltip(new Tooltip("Select a text file to encipher instead of the pasted text"));
+        clear.setTooltip(new Tooltip("Click to clear the message"));
+        encipher.setTooltip(new Tooltip("Encipher the letters of the message, starting at the current rotor positions"));
+        cancel.setTooltip(new Tooltip("Stop enciphering, leaving the rotors where they have reached"));
+        save.setTooltip(new Tooltip("Save the enciphered message to a text file"));
+
+        options.getChildren().addAll(load, clear, info, region, encipher, cancel, save);
+        HBox.setHgrow(region, Priority.ALWAYS);
+
+        return options;
+    }
+
+    /**
+     * Builds the User controls as a VBox.
+     * @return the VBox that captures the User controls.
+     */
+    private VBox buildControlPanel() {
+        VBox panel = new VBox();
+
+        panel.setSpacing(10);
+        panel.setPadding(new Insets(10.0));
+
+        input = new TextArea();
+        input.setPromptText("Paste or type the message here");
+        input.setWrapText(true);
+        input.setPrefRowCount(8);
+
+        progress = new ProgressBar(0.0);
+        progress.setMaxWidth(Double.MAX_VALUE);
+
+        output = new ListView<Integer>(lines);
+        output.setPrefHeight(240.0);
+        output.setCellFactory(view -> new ListCell<Integer>() {
+            @Override
+            protected void updateItem(Integer line, boolean empty) {
+                super.updateItem(line, empty);
+                setText((empty || (line == null)) ? null : getLine(line));
+            }
+        });
+        output.setStyle("-fx-font-family: monospace;");
+
+        panel.getChildren().addAll(input, buildOptions(), progress, output);
+
+        return panel;
+    }
+
+    private void init() {
+        this.initStyle(StageStyle.UNDECORATED);
+        this.initModality(Modality.APPLICATION_MODAL);
+
+        VBox root = new VBox();
+        root.getChildren().add(buildTopBar());
+        root.getChildren().add(buildControlPanel());
+        root.setPrefWidth(560.0);
+
+        Scene scene = new Scene(root);
+        scene.getStylesheets().add(getClass().getResource("application.css").toExternalForm());
+
+        this.setScene(scene);
+        syncUI();
+    }
+
+
+    /**
+     * Constructor.
+     * @param model used to run the job and to set the final rotor positions.
+     */
+    public MessageControl(Model model) {
+        super();
+        this.model = model;
+        init();
+    }
+
+    /**
+     * Launch the Message Control and wait until it is closed. The rotors are
+     * moved when each message has been enciphered.
+     */
+    public void showControl() {
+        this.showAndWait();
+    }
+
+}
@@ -24,23 +24,35 @@
  */
 package phillockett65.Enigma;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.stage.Stage;
-import javafx.util.Pair;
 import phillockett65.Debug.Debug;
 import phillockett65.Enigma.RotorControl.RotorEvent;
+import phillockett65.Metrics.EngineMetrics;
+import phillockett65.Metrics.MapperRebuildEvent;
+import phillockett65.Metrics.RotorRebuildEvent;
 import phillockett65.PairSelect.PairSelectControl;
+import phillockett65.PairSelect.PairSelect.PairEvent;
+import phillockett65.Service.EncipherProcessor;
+import phillockett65.Service.EncipherService;
+import phillockett65.Service.SharedMemoryServer;
 
 public class Model {
 
     // Debug delta used to adjust the local logging level.
     private static final int DD = 0;
 
-    public final static String DATAFILE = "Settings.ser";
+    public final static String DATAFILE = "Settings.dat";
+    public final static String LEGACYFILE = "Settings.ser";
+    public final static String PROFILEFILE = "Profiles.dat";
+    public final static String JOURNALFILE = "Journal.dat";
+    public final static String TRACEFILE = "Trace.dat";
     private final static String CONFIGURABLE = "CONFIGURABLE";
 
     public final static int FULL_COUNT = 13;
@@ -104,7 +116,6 @@ public class Model {
     public void initialize() {
         Debug.trace(DD, "Model initialized.");
         initRotorWiring();
-        initDefaultSettings();
 
         initializeReflector();
         initializeRotorSetup();
@@ -127,7 +138,11 @@ public class Model {
         for (RotorControl rotor : rotorControls) {
             rotor.initListeners();
         }
+        replayJournal();
         updateReflector();
+        updatePlugboard();
+        openJournal();
+        startWorker();
     }
 
     public String getTitle() { return stage.getTitle(); }
@@ -154,22 +169,22 @@ public class Model {
     }
 
     public void dailySettings(int date) {
+        pushConfiguration(() -> {
+            SettingsData settings = EnigmaData.getKeyList()[date];
 
-        SettingsData settings = keyList649[date];
-
-        ArrayList<String> list = Mapper.splitWords(settings.getReflector());
-        initPairText(list);
-        setReflectorChoice(CONFIGURABLE);
+            ArrayList<String> list = Mapper.splitWords(settings.getReflector());
+            initPairText(list);
+            setReflectorChoice(CONFIGURABLE);
 
-        initFourthWheel(false);
+            initFourthWheel(false);
 
-        for (int i = 0; i < ROTOR_COUNT; ++i) {
-            setRotorState(i, settings.getRotor(i), settings.getRingSetting(i), settings.getOffset(i, 0));
-        }
+            for (int i = 0; i < ROTOR_COUNT; ++i) {
+                setRotorState(i, settings.getRotor(i), settings.getRingSetting(i), settings.getOffset(i, 0));
+            }
 
-        list = Mapper.splitWords(settings.getPlugboard());
-        initPlugText(list);
-        updatePlugboard();
+            list = Mapper.splitWords(settings.getPlugboard());
+            initPlugText(list);
+        });
     }
 
 
@@ -179,17 +194,231 @@ public class Model {
      */
 
     /**
-     * Call the static DataStore1 method, to read the data from disc.
+     * Call the static DataStore2 method, to read the data from disc.
      * @return true if data successfully read from disc, false otherwise.
      */
     private boolean readData() {
-        if (DataStore1.readData() == true) {
+        if (DataStore2.readData() == true) {
             return true;
         }
 
         return false;
     }
 
+    private Journal journal = null;
+
+    /**
+     * Replay any journal left behind by a crash on top of the settings read
+     * from disc. Key presses only step a headless Engine, so the spinners 
+     * are moved once at the end rather than for every key.
+     */
+    private void replayJournal() {
+        final Engine engine = Journal.replay(JOURNALFILE, store -> store.pushMachine());
+        if (engine == null)
+            return;
+
+        for (int i = 0; i < ROTOR_COUNT; ++i)
+            getState(i).setRotorIndex(engine.getOffset(i));
+    }
+
+    private void openJournal() {
+        DataStore2 store = new DataStore2();
+        store.pull();
+
+        try {
+            journal = new Journal(JOURNALFILE, store);
+        } catch (IOException e) {
+            Debug.critical(DD, e.getMessage());
+        }
+    }
+
+    /**
+     * Record the current machine configuration in the journal, if it is 
+     * open.
+     */
+    private void recordConfiguration() {
+        if (journal != null) {
+            DataStore2 store = new DataStore2();
+            store.pull();
+            journal.snapshot(store);
+        }
+    }
+
+    /**
+     * Record a change of the wiring in the journal, if it is open. The rotor
+     * offsets are not recorded, as the spinners may lag behind the key 
+     * presses already in the journal.
+     */
+    private void recordWiring() {
+        if (journal != null) {
+            DataStore2 store = new DataStore2();
+            store.pull();
+            journal.wiring(store);
+        }
+    }
+
+    /**
+     * Record a change of the wiring in the journal, if it is open, and pass
+     * it to the EngineWorker, if it is running. The rotor offsets are left 
+     * where the EngineWorker has reached, as the spinners may still be 
+     * catching up with key presses in flight.
+     */
+    private void configurationChanged() {
+        if (reconfiguring)
+            return;
+
+        recordWiring();
+
+        if (worker != null)
+            worker.rewire(buildEngine());
+        updateService();
+    }
+
+    /**
+     * Record an explicit change of the rotor offsets, and possibly the 
+     * wiring, in the journal, if it is open, and pass it to the EngineWorker,
+     * if it is running, using the offsets from the spinners.
+     */
+    private void offsetsChanged() {
+        if (reconfiguring)
+            return;
+
+        recordConfiguration();
+
+        if (worker != null)
+            worker.reconfigure(buildEngine());
+        updateService();
+    }
+
+    // Set while a whole configuration is pushed to the controls.
+    private boolean reconfiguring = false;
+
+    /**
+     * Push a whole machine configuration to the controls, then rebuild the
+     * mappers and reconfigure the EngineWorker once, rather than for every
+     * control that changes.
+     * @param push sets the controls.
+     */
+    private void pushConfiguration(Runnable push) {
+        reconfiguring = true;
+        try {
+            push.run();
+        } finally {
+            reconfiguring = false;
+        }
+
+        updateReflector();
+        updatePlugboard();
+        offsetsChanged();
+    }
+
+    /**
+     * Close and delete the journal. Called after the settings have been
+     * saved, as the journal is no longer needed.
+     */
+    public void closeJournal() {
+        if (journal == null)
+            return;
+
+        try {
+            journal.close();
+        } catch (IOException e) {
+            Debug.critical(DD, e.getMessage());
+        }
+        journal = null;
+    }
+
+    private ProfileStore profiles = null;
+
+    /**
+     * Get the profile store, opening it the first time it is needed, and
+     * pick up any profiles saved by another process since it was last used.
+     * @return the open ProfileStore.
+     * @throws IOException if the store cannot be opened or read.
+     */
+    private ProfileStore getProfiles() throws IOException {
+        if (profiles == null)
+            profiles = ProfileStore.open(PROFILEFILE);
+        else
+            profiles.refresh();
+
+        return profiles;
+    }
+
+    /**
+     * @return the names of the saved profiles in alphabetical order, empty
+     * if the profile store cannot be opened.
+     */
+    public ArrayList<String> getProfileNames() {
+        ArrayList<String> names = new ArrayList<String>();
+        try {
+            names.addAll(getProfiles().getNames());
+        } catch (IOException e) {
+            Debug.critical(DD, e.getMessage());
+        }
+        Collections.sort(names);
+
+        return names;
+    }
+
+    /**
+     * Close the profile store, if it is open. Called on shutdown.
+     */
+    public void closeProfiles() {
+        if (profiles == null)
+            return;
+
+        try {
+            profiles.close();
+        } catch (IOException e) {
+            Debug.critical(DD, e.getMessage());
+        }
+        profiles = null;
+    }
+
+    /**
+     * Save the current machine configuration as a named profile.
+     * @param name of the profile.
+     * @return true if the profile was saved, false otherwise.
+     */
+    public boolean saveProfile(String name) {
+        DataStore2 store = new DataStore2();
+        store.pull();
+
+        try {
+            getProfiles().append(name, store);
+        } catch (IOException e) {
+            Debug.critical(DD, e.getMessage());
+
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Switch the machine configuration to a named profile.
+     * @param name of the profile.
+     * @return true if the profile was found and loaded, false otherwise.
+     */
+    public boolean switchProfile(String name) {
+        DataStore2 store;
+        try {
+            store = getProfiles().load(name);
+        } catch (IOException e) {
+            Debug.critical(DD, e.getMessage());
+
+            return false;
+        }
+
+        if (store == null)
+            return false;
+
+        pushConfiguration(store::pushMachine);
+
+        return true;
+    }
+
 
 
     /************************************************************************
@@ -198,54 +427,13 @@ public class Model {
     private HashMap<String, RotorData> rotors = new HashMap<>();
     private HashMap<String, RotorData> reflectors = new HashMap<>();
 
-    private static final RotorData[] rotorData = {
-
-        new RotorData("IC",     "DMTWSILRUYQNKFEJCAZBPGXOHV",	"1924",	"Commercial Enigma A, B", "R"),
-        new RotorData("IIC",    "HQZGPJTMOBLNCIFDYAWVEUSRKX",	"1924",	"Commercial Enigma A, B", "F"),
-        new RotorData("IIIC",   "UQNTLSZFMREHDPXKIBVYGJCWOA",	"1924",	"Commercial Enigma A, B", "W"),
-
-        new RotorData("I-R",    "JGDQOXUSCAMIFRVTPNEWKBLZYH",	"7 February 1941",	"German Railway (Rocket)", "R"),
-        new RotorData("II-R",   "NTZPSFBOKMWRCJDIVLAEYUXHGQ",	"7 February 1941",	"German Railway (Rocket)", "F"),
-        new RotorData("III-R",  "JVIUBHTCDYAKEQZPOSGXNRMWFL",	"7 February 1941",	"German Railway (Rocket)", "W"),
-        new RotorData("UKW-R",  "QYHOGNECVPUZTFDJAXWMKISRBL",	"7 February 1941",	"German Railway (Rocket)", ""),
-        new RotorData("ETW-R",  "QWERTZUIOASDFGHJKPYXCVBNML",	"7 February 1941",	"German Railway (Rocket)", ""),
-
-        new RotorData("I-K",    "PEZUOHXSCVFMTBGLRINQJWAYDK",	"February 1939",	"Swiss K", "R"),
-        new RotorData("II-K",   "ZOUESYDKFWPCIQXHMVBLGNJRAT",	"February 1939",	"Swiss K", "F"),
-        new RotorData("III-K",  "EHRVXGAOBQUSIMZFLYNWKTPDJC",	"February 1939",	"Swiss K", "W"),
-        new RotorData("UKW-K",  "IMETCGFRAYSQBZXWLHKDVUPOJN",	"February 1939",	"Swiss K", ""),
-        new RotorData("ETW-K",  "QWERTZUIOASDFGHJKPYXCVBNML",	"February 1939",	"Swiss K", ""),
-
-        new RotorData("I",      "EKMFLGDQVZNTOWYHXUSPAIBRCJ",	"1930",	"Enigma I", "R"),
-        new RotorData("II",     "AJDKSIRUXBLHWTMCQGZNPYFVOE",	"1930",	"Enigma I", "F"),
-        new RotorData("III",    "BDFHJLCPRTXVZNYEIWGAKMUSQO",	"1930",	"Enigma I", "W"),
-        new RotorData("IV",     "ESOVPZJAYQUIRHXLNFTGKDCMWB",	"December 1938",	"M3 Army", "K"),
-        new RotorData("V",      "VZBRGITYUPSDNHLXAWMJQOFECK",	"December 1938",	"M3 Army", "A"),
-        new RotorData("VI",     "JPGVOUMFYQBENHZRDKASXLICTW",	"1939",	"M3 & M4 Naval (FEB 1942)", "AN"),
-        new RotorData("VII",    "NZJHGRCXMYSWBOUFAIVLPEKQDT",	"1939",	"M3 & M4 Naval (FEB 1942)", "AN"),
-        new RotorData("VIII",   "FKQHTLXOCBJSPDZRAMEWNIUYGV",	"1939",	"M3 & M4 Naval (FEB 1942)", "AN"),
-
-        new RotorData("Beta",               "LEYJVCNIXWPBQMDRTAKZGFUHOS",	"Spring 1941",	"M4 R2", ""),
-        new RotorData("Gamma",              "FSOKANUERHMBTIYCWLQPZXVGJD",	"Spring 1942",	"M4 R2", ""),
-        new RotorData("Reflector A",        "EJMZALYXVBWFCRQUONTSPIKHGD",	"",	"", ""),
-        new RotorData("Reflector B",        "YRUHQSLDPXNGOKMIEBFZCWVJAT",	"",	"", ""),
-        new RotorData("Reflector C",        "FVPJIAOYEDRZXWGCTKUQSBNMHL",	"",	"", ""),
-        new RotorData("Reflector B Thin",   "ENKQAUYWJICOPBLMDXZVFTHRGS",	"1940",	"M4 R1 (M3 + Thin)", ""),
-        new RotorData("Reflector C Thin",   "RDOBJNTKVEHMLFCWZAXGYIPSUQ",	"1940",	"M4 R1 (M3 + Thin)", ""),
-        new RotorData("ETW",                "ABCDEFGHIJKLMNOPQRSTUVWXYZ",	"",	"Enigma I", ""),
-
-    };
-
     /**
      * Construct all the Rotor collections.
-     * 
-     * Note: for the commercial, rocket and swissK Rotors, the turnover points 
-     * are guesses and may be incorrect.
      */
     private void initRotorWiring() {
 
         // Build list of rotors and list of reflectors that can be selected.
-        for (RotorData rotor : rotorData) {
+        for (RotorData rotor : EnigmaData.getRotorData()) {
             String id = rotor.getId();
 
             if (rotor.isReflector()) {
@@ -262,72 +450,6 @@ public class Model {
 
 
 
-    /************************************************************************
-     * Support code for the monthly key list data number 649.
-     *   https://en.wikipedia.org/wiki/Enigma_machine#Details
-     */
-
-    private HashMap<String, String> reflectors649 = new HashMap<>();
-    private SettingsData[] keyList649 = new SettingsData[32];
-
-    private void addToReflectors649(String name, String pairString) {
-        reflectors649.put(name, pairString);
-    }
-    private void initRef649Reflector() {
-        addToReflectors649("Ref649-1",  "IL AP EU HO QT WZ KV GM BF NR DX CS");
-        addToReflectors649("Ref649-9",  "AI BT MV HU FW EL DG KN RZ OQ CP SX");
-        addToReflectors649("Ref649-17", "IU AS DV GL FT OX EZ CH MR KN BQ PW");
-        addToReflectors649("Ref649-25", "KM AX FZ GO DI CN BR PV LT EQ HS UW");
-     }
- 
-    private void addToKeyList649(int day, String wheels, int r1, int r2, int r3, 
-        String ref, String plugs, String indicator) {
-
-        String reflector = reflectors649.get(ref);
-        keyList649[day] = new SettingsData(wheels, r1, r2, r3, reflector, plugs, indicator);
-    }
-    private void initKeyList649() {
-        addToKeyList649(31, "I V III",    14, 9, 24,  "Ref649-25",    "SZ GT DV KU FO MY EW JN IX LQ", "wny dgy ekb rzg");
-        addToKeyList649(30, "IV III II",  5, 26, 2,   "Ref649-25",    "IS EV MX RW DT UZ JQ AO CH NY", "ktl acw zci wzo");
-        addToKeyList649(29, "III II I",   2, 24, 3,   "Ref649-25",    "DJ AT CV IO ER QS LW PZ FN BH", "ioc acn ovw wvc");
-        addToKeyList649(28, "II III V",   6, 8, 16,   "Ref649-25",    "CR FV AI DK OT MQ EU BX LP GJ", "lrb cld ude rzh");
-        addToKeyList649(27, "III I IV",   11, 3, 7,   "Ref649-25",    "DY IN BV GR AM LO FP HT EX UW", "woj fbh vct uis");
-        addToKeyList649(26, "I IV V",     17, 22, 19, "Ref649-25",    "VZ AL RT KO CG EI BJ DU FS HP", "xle gbo uev rxm");
-        addToKeyList649(25, "IV III I",   8, 25, 12,  "Ref649-25",    "OR PV AD IT FK HJ LZ NS EQ CW", "ouc uhq uew uit");
-        addToKeyList649(24, "V I IV",     5, 18, 14,  "Ref649-17",    "TY AS OW KV JM DR HX GL CZ NU", "kpl rwl vci tlq");
-        addToKeyList649(23, "IV II I",    24, 12, 4,  "Ref649-17",    "QV FR AK EO DH CJ MZ SX GN LT", "ebn rwm udf tlo");
-        addToKeyList649(22, "II IV V",    1, 9, 21,   "Ref649-17",    "FJ ES IM RX LV AY OU BG WZ CN", "jrc acx mwe wve");
-        addToKeyList649(21, "I V II",     13, 5, 19,  "Ref649-17",    "RU HL FY OS GZ DM AW CE TV NX", "jpw del mwf wvf");
-        addToKeyList649(20, "III IV V",   24, 1, 10,  "Ref649-17",    "DF MO QZ AU RY SV JL GX BE TW", "jqd cef nvo ysh");
-        addToKeyList649(19, "V III I",    17, 25, 20, "Ref649-17",    "OX PR FH WY DL CM AE TZ JS GI", "idf fpx jwg tlg");
-        addToKeyList649(18, "IV II V",    15, 23, 26, "Ref649-17",    "EJ OY IV AQ KW FX MT PS LU BD", "lsa zbw vcj rxn");
-        addToKeyList649(17, "I IV II",    21, 10, 6,  "Ref649-17",    "IR KZ LS EM OV GY QX AF JP BU", "mae hzi sog ysi");
-        addToKeyList649(16, "V II III",   8, 16, 13,  "Ref649-9",     "HM JO DI NR BY XZ GS PU FQ CT", "tdp dhb fkb uiv");
-        addToKeyList649(15, "II IV I",    1, 3, 7,    "Ref649-9",     "DS HY MR GW LX AJ BQ CO IP NT", "ldw hzj soh wvg");
-        addToKeyList649(14, "IV I V",     15, 11, 5,  "Ref649-9",     "GM JR KS IY HZ PL AX BT CQ NV", "imz noa tjv xtk");
-        addToKeyList649(13, "I III II",   13, 20, 3,  "Ref649-9",     "LY AG KM BR IQ JU HV SW ET CX", "zgr dgz gjo ryq");
-        addToKeyList649(12, "V II IV",    18, 10, 7,  "Ref649-9",     "MU BP CY RZ KX AN JT DG IL FW", "zdy rkf tjw xtl");
-        addToKeyList649(11, "II IV III",  2, 26, 15,  "Ref649-9",     "KN UY HR PW FM BO EZ QT DX JV", "zea rjy soi wvh");
-        addToKeyList649(10, "III V IV",   23, 21, 1,  "Ref649-9",     "LR IK MS QU HW PT GO VX FZ EN", "lrc zbx vbm rxo");
-        addToKeyList649( 9, "V I III",    16, 4, 8,   "Ref649-9",     "QY BS LN KT AP IU DW HO RV JZ", "edj eyr vby tlh");
-        addToKeyList649( 8, "IV II V",    13, 19, 25, "Ref649-1",     "FI NQ SY CU BZ AH EL TX DO KP", "yiz dha ekc tli");
-        addToKeyList649( 7, "I IV II",    9, 3, 22,   "Ref649-1",     "UX IZ HN BK GQ CP FT JY MW AR", "lan dgb zsj wbi");
-        addToKeyList649( 6, "III I V",    11, 18, 14, "Ref649-1",     "DQ GU BW NP HK AZ CI FO JX VY", "lao cft zsk wbj");
-        addToKeyList649( 5, "V II IV",    23, 2, 25,  "Ref649-1",     "MV CL GK OQ BI FU HS PX NW EY", "lju cdr iye waj");
-        addToKeyList649( 4, "II IV I",    4, 21, 9,   "Ref649-1",     "AC BL OZ EK QW GP SU DH JM TX", "lsb zby vcy ujb");
-        addToKeyList649( 3, "V I II",     19, 11, 6,  "Ref649-1",     "KR MP CN BF EH DZ IW AV GJ LO", "lap owd iwu wak");
-        addToKeyList649( 2, "IV V I",     16, 14, 2,  "Ref649-1",     "BN HU EG PY KQ CF OS JW AI VZ", "aqd bdy iyf xtd");
-        addToKeyList649( 1, "II I III",   23, 12, 10, "Ref649-1",     "DP BM NZ CK GV HQ AF UY SW JO", "kgl cdf giq wuv");
-    }
-
-    /**
-     * Construct all the monthly key list data.
-     */
-    private void initDefaultSettings() {
-        initRef649Reflector();
-        initKeyList649();
-    }
-
      /************************************************************************
      * Support code for "Reflector Set-Up" panel.
      */
@@ -349,6 +471,7 @@ public class Model {
     public void setReflectorChoice(String choice)   {
         initReflectorChoice(choice);
         updateReflector();
+        configurationChanged();
     }
 
     private Mapper buildNewReflector() {
@@ -365,7 +488,14 @@ public class Model {
     }
 
     private void updateReflector() {
+        MapperRebuildEvent event = new MapperRebuildEvent();
+        event.begin();
+
         reflector = buildNewReflector();
+        EngineMetrics.getInstance().mapperRebuild();
+
+        event.mapper = reflector.getId();
+        event.commit();
     }
 
     public boolean isReconfigurable() { return reconfigurable; }
@@ -387,7 +517,8 @@ public class Model {
 
     public boolean launchReflector() {
         if (reflectorControl.showControl()) {
-            updateReflector();
+            // The reflector has already been updated by reflectorChanged().
+            recordWiring();
 
             return true;
         }
@@ -395,11 +526,31 @@ public class Model {
         return false;
     }
 
+    /**
+     * Called for every change to the reconfigurable reflector pairs. A 
+     * single pair change only alters the map when the reflector becomes 
+     * valid or invalid, as an incomplete reflector maps straight through.
+     * @param event describing the change.
+     */
+    private void reflectorChanged(PairEvent event) {
+        if ((reflector == null) || !reconfigurable || reconfiguring)
+            return;
+
+        if (event.isSinglePair() && (reflectorControl.isValid() == reflector.isReflector()))
+            return;
+
+        updateReflector();
+        if (worker != null)
+            worker.rewire(buildEngine());
+        updateService();
+    }
+
     /**
      * Initialize "Reflector Set-Up" panel.
      */
     private void initializeReflector() {
         reflectorControl = new PairSelectControl(false, "Configure Reflector connections");
+        reflectorControl.addLinkChangeHandler(this::reflectorChanged);
     }
 
 
@@ -411,7 +562,6 @@ public class Model {
     private ObservableList<String> wheelList = FXCollections.observableArrayList();
 
     private ArrayList<RotorControl> rotorControls = new ArrayList<RotorControl>(ROTOR_COUNT);
-    private ArrayList<Rotor> activeRotors = new ArrayList<Rotor>(ROTOR_COUNT);
 
     private boolean fourthWheel = false;
 
@@ -428,6 +578,7 @@ public class Model {
 
     public void setFourthWheel(boolean state) {
         initFourthWheel(state);
+        configurationChanged();
     }
 
     public boolean isFourthWheel() { return fourthWheel; }
@@ -442,18 +593,6 @@ public class Model {
     public String getWheelChoice(int index) { return getState(index).getWheelChoice(); }
     public int getRingIndex(int index) { return getState(index).getRingIndex(); }
     public int getRotorIndex(int index) { return getState(index).getRotorIndex(); }
-    private void incrementRotorOffset(int index, int step) { getState(index).increment(step); }
-
-    private Rotor buildNewRotor(int id) {
-        return new Rotor(getRotorData(rotors, getWheelChoice(id)), getRingIndex(id));
-    }
-
-    private Rotor getActiveRotor(int id) { return activeRotors.get(id); }
-
-    private void addActiveRotorEntry(int id) { activeRotors.add(buildNewRotor(id)); }
-    private void updateActiveRotorEntry(int id) { activeRotors.set(id, buildNewRotor(id)); }
-    private void setActiveRotorRingSetting(int id) { getActiveRotor(id).setRingSetting(getRingIndex(id)); }
-    private void setActiveRotorOffset(int id) { getActiveRotor(id).setOffset(getRotorIndex(id)); }
 
     /**
      * Initialize "Rotor Set-Up".
@@ -471,16 +610,54 @@ public class Model {
         }
     }
 
+    private void commitRotorRebuild(RotorRebuildEvent rebuild, int id) {
+        EngineMetrics.getInstance().rotorRebuild();
+
+        rebuild.id = id;
+        rebuild.wheel = getWheelChoice(id);
+        rebuild.ring = getRingIndex(id);
+        rebuild.commit();
+    }
+
+    /**
+     * Record a wheel or ring change of a rotor in the journal, if it is 
+     * open, and pass a rebuilt Engine to the EngineWorker, if it is running,
+     * recording the rebuild. The rotor offsets are left where the 
+     * EngineWorker has reached, as for any other wiring change.
+     * @param id of the rotor that changed.
+     */
+    private void rotorChanged(int id) {
+        if (reconfiguring)
+            return;
+
+        recordWiring();
+
+        if (worker != null) {
+            RotorRebuildEvent rebuild = new RotorRebuildEvent();
+            rebuild.begin();
+            final Engine engine = buildEngine();
+            commitRotorRebuild(rebuild, id);
+
+            worker.rewire(engine);
+        }
+        updateService();
+    }
+
     public void handleRotorEvent(RotorEvent event) {
         final int id = event.getId();
 
         if (event.getEventType() == RotorEvent.WHEEL_CHOICE) {
             Debug.trace(DD, "WHEEL_CHOICE[" + id + "] = " + getWheelChoice(id));
-            updateActiveRotorEntry(id);
+            rotorChanged(id);
         } else
         if (event.getEventType() == RotorEvent.RING_SETTING) {
             Debug.trace(DD, "RING_SETTING[" + id + "] = " + getRingIndex(id));
-            setActiveRotorRingSetting(id);
+            rotorChanged(id);
+        } else {
+            // Offset changes from key presses are journalled as the key and
+            // are already known to the EngineWorker.
+            if (!advancing)
+                offsetsChanged();
         }
     }
 
@@ -499,7 +676,14 @@ public class Model {
     }
 
     private void updatePlugboard() {
+        MapperRebuildEvent event = new MapperRebuildEvent();
+        event.begin();
+
         plugboard = buildNewPlugboard();
+        EngineMetrics.getInstance().mapperRebuild();
+
+        event.mapper = plugboard.getId();
+        event.commit();
     }
 
     // Called by DataStore on start up.
@@ -519,7 +703,8 @@ public class Model {
 
     public boolean launchPlugboard() {
         if (plugboardControl.showControl()) {
-            updatePlugboard();
+            // The plugboard has already been updated by plugboardChanged().
+            recordWiring();
 
             return true;
         }
@@ -528,11 +713,43 @@ public class Model {
     }
 
 
+    /**
+     * Called for every change to the plugboard pairs. A single pair is 
+     * swapped in place in the plugboard and in the EngineWorker Engine, 
+     * otherwise both are rebuilt.
+     * @param event describing the change.
+     */
+    private void plugboardChanged(PairEvent event) {
+        if ((plugboard == null) || reconfiguring)
+            return;
+
+        if (!event.isSinglePair()) {
+            updatePlugboard();
+            if (worker != null)
+                worker.rewire(buildEngine());
+            updateService();
+
+            return;
+        }
+
+        final int a = event.getFirst();
+        final int b = event.getSecond();
+        if (event.isLinked())
+            plugboard.link(a, b);
+        else
+            plugboard.unlink(a, b);
+
+        if (worker != null)
+            worker.setPlug(a, b, event.isLinked());
+        updateService();
+    }
+
     /**
      * Initialize "Plugboard Connections" panel.
      */
     private void initializePlugboardConnections() {
         plugboardControl = new PairSelectControl(true, "Select Plugboard connections");
+        plugboardControl.addLinkChangeHandler(this::plugboardChanged);
     }
 
 
@@ -545,157 +762,267 @@ public class Model {
     private ObservableList<Integer> settingsList = FXCollections.observableArrayList();
 
     public boolean isShow() { return show; }
-    public void setShow(boolean state) { show = state; }
 
-    private Mapper keyboard;
-    private Mapper lampboard;
+    /**
+     * Turn the recording of translation steps to TRACEFILE on or off. Use 
+     * StepTraceViewer to render the trace.
+     * @param state true to record the steps, false otherwise.
+     */
+    public void setShow(boolean state) {
+        show = state;
+        if (worker != null)
+            worker.showSteps(show);
+    }
+
+    private EngineWorker worker = null;
+    private EngineWorker.Listener resultListener = null;
 
-    private Mapper buildDirectMapper(String label) {
-        final RotorData rotor = getRotorData(rotors, "ETW");
+    /**
+     * Build a headless Engine from the current configuration and rotor
+     * offsets.
+     * @return the Engine.
+     */
+    private Engine buildEngine() {
+        String[] wheels = new String[ROTOR_COUNT];
+        int[] rings = new int[ROTOR_COUNT];
+        for (int i = 0; i < ROTOR_COUNT; ++i) {
+            wheels[i] = getWheelChoice(i);
+            rings[i] = getRingIndex(i);
+        }
 
-        return new Mapper(label, rotor.getMap());
+        Engine engine = new Engine(wheels, rings, fourthWheel,
+            reflector.getMap(), plugboard.getMap());
+        for (int i = 0; i < ROTOR_COUNT; ++i)
+            engine.setOffset(i, getRotorIndex(i));
+
+        return engine;
     }
 
-    private void updateKeyboard() {
-        keyboard = buildDirectMapper("Key");
+    /**
+     * Called by the EngineWorker at most once per pulse. Move the rotor
+     * spinners to the positions after the latest key press, then pass it on
+     * to the controller.
+     */
+    private void refreshResults(int latest) {
+        advancing = true;
+        for (int i = 0; i < ROTOR_COUNT; ++i) {
+            final int offset = EngineWorker.getOffset(latest, i);
+            if (getRotorIndex(i) != offset)
+                getState(i).setRotorIndex(offset);
+        }
+        advancing = false;
+
+        if (resultListener != null)
+            resultListener.refresh(latest);
     }
 
-    private void updateLampboard() {
-        lampboard = buildDirectMapper("Lamp");
+    private void startWorker() {
+        worker = new EngineWorker(buildEngine(), show, new EngineWorker.Listener() {
+            @Override
+            public void results(int[] results, int count) {
+                if (resultListener != null)
+                    resultListener.results(results, count);
+            }
+
+            @Override
+            public void refresh(int latest) {
+                refreshResults(latest);
+            }
+        });
     }
 
-    public ObservableList<Integer> getSettingsList()   { return settingsList; }
+    /**
+     * Finish processing all key presses, so that the rotor spinners show the
+     * final positions, and stop the EngineWorker. Called before the settings
+     * are saved.
+     */
+    public void stopWorker() {
+        if (worker == null)
+            return;
+
+        worker.close();
+        worker = null;
+    }
 
     /**
-     * Find a RotorData with the given id in the given list,
-     * @param list of Rotors to search.
-     * @param target id of Rotor.
-     * @return RotorData with matching id if found, entry 0 otherwise.
+     * Set the listener that receives the results of key presses, on the FX 
+     * thread. The rotor spinners are updated before each refresh.
+     * @param listener to receive the results.
      */
-    private RotorData getRotorData(HashMap<String, RotorData> list, String target) {
-        return list.get(target);
+    public void setResultListener(EngineWorker.Listener listener) {
+        resultListener = listener;
     }
 
+    private EncipherService service = null;
 
     /**
-     * Advances the spinner of the right rotor then checks the other rotors. 
-     * The notch point of the middle rotor is used to check for a step of the 
-     * left rotor and a double step of the middle rotor. The turnover point of 
-     * the right rotor is used to check for a step of the middle rotor
+     * Start the local HTTP EncipherService, for other tools to share this 
+     * engine. Requests use the configuration, including the rotor offsets, 
+     * as it was at the last configuration change.
+     * @param port to listen on.
+     * @return true if the service started, false otherwise.
      */
-    private void advanceRotors() {
-        // Normal step of the spinner of the right rotor.
-        incrementRotorOffset(RIGHT, 1);
+    public boolean startService(int port) {
+        try {
+            service = new EncipherService(port, Runtime.getRuntime().availableProcessors(), buildEngine());
+        } catch (IOException e) {
+            Debug.critical(DD, e.getMessage());
 
-        Rotor rotor = getActiveRotor(MIDDLE);
-        if (rotor.isNotchPoint(getRotorIndex(MIDDLE))) {
-            // Double step of the spinner of the middle rotor, normal step of 
-            // the spinner of the left rotor.
-            incrementRotorOffset(MIDDLE, 1);
-            incrementRotorOffset(LEFT, 1);
+            return false;
         }
 
-        rotor = getActiveRotor(RIGHT);
-        if (rotor.isTurnoverPoint(getRotorIndex(RIGHT))) {
-            // The right rotor takes the spinner of the middle rotor one step 
-            // further.
-            incrementRotorOffset(MIDDLE, 1);
-        }
+        return true;
     }
 
     /**
-     * Update the Rotor Offsets.
+     * Stop the EncipherService, if it is running.
      */
-    private void updateRotorOffsets() {
-        for (int i = 0; i < ROTOR_COUNT; ++i) {
-            setActiveRotorOffset(i);
-        }
-    }
+    public void stopService() {
+        if (service == null)
+            return;
 
+        service.close();
+        service = null;
+    }
 
-    private int mapperTranslate(int index, Mapper mapper, int dir) {
-        Pair<Integer, String> result = mapper.swap(dir, index);
-        if (isShow()) {
-            System.out.print(result.getValue());
-        }
+    /**
+     * Take a snapshot of the machine, for the Enigma stream adapters or 
+     * anything else that enciphers off the FX thread. The Model is not 
+     * advanced by using it.
+     * @return an Engine with the current configuration and rotor offsets.
+     */
+    public Engine snapshot() {
+        return buildEngine();
+    }
 
-        return result.getKey();
+    /**
+     * Build a Flow.Processor that enciphers a stream, starting from the 
+     * current configuration and rotor offsets. The Model is not advanced.
+     * @return the EncipherProcessor.
+     */
+    public EncipherProcessor newProcessor() {
+        return new EncipherProcessor(buildEngine());
     }
-    private int mapperTranslate(int index, int id, int dir) {
-        Pair<Integer, String> result = getActiveRotor(id).swap(dir, index);
-        if (isShow()) {
-            System.out.print(result.getValue());
+
+    private SharedMemoryServer sharedMemory = null;
+
+    /**
+     * Start the SharedMemoryServer, for other local processes to share this 
+     * engine with lower latency than the EncipherService. The CURRENT 
+     * configuration is kept up to date in the same way.
+     * @param fileName of the channel file to create.
+     * @return true if the server started, false otherwise.
+     */
+    public boolean startSharedMemory(String fileName) {
+        try {
+            sharedMemory = new SharedMemoryServer(fileName, SharedMemoryServer.DEFAULT_SLOTS,
+                SharedMemoryServer.DEFAULT_PAYLOAD, buildEngine());
+        } catch (IOException e) {
+            Debug.critical(DD, e.getMessage());
+
+            return false;
         }
 
-        return result.getKey();
+        return true;
     }
 
     /**
-     * Translates an index (numerical equivalent of the letter) to another for 
-     * every active Mapper.
-     * @param index to translate.
-     * @return the translated index.
+     * Stop the SharedMemoryServer, if it is running.
      */
-    private int translateIndex(int index) {
-        index = mapperTranslate(index, keyboard, Mapper.RIGHT_TO_LEFT);
-        index = mapperTranslate(index, plugboard, Mapper.RIGHT_TO_LEFT);
+    public void stopSharedMemory() {
+        if (sharedMemory == null)
+            return;
 
-        index = mapperTranslate(index, RIGHT, Mapper.RIGHT_TO_LEFT);
-        index = mapperTranslate(index, MIDDLE, Mapper.RIGHT_TO_LEFT);
-        index = mapperTranslate(index, LEFT, Mapper.RIGHT_TO_LEFT);
+        sharedMemory.close();
+        sharedMemory = null;
+    }
 
-        if (fourthWheel)
-            index = mapperTranslate(index, SLOW, Mapper.RIGHT_TO_LEFT);
+    private void updateService() {
+        if (service != null)
+            service.configure(buildEngine());
+        if (sharedMemory != null)
+            sharedMemory.configure(SharedMemoryServer.CURRENT, buildEngine());
+    }
 
-        index = mapperTranslate(index, reflector, Mapper.RIGHT_TO_LEFT);
+    /**
+     * Queue a key press for the EngineWorker. The result is passed to the
+     * result listener.
+     * @param index (0..25) of the key pressed.
+     */
+    public void submitKey(int index) {
+        if (worker == null)
+            return;
 
-        if (fourthWheel)
-            index = mapperTranslate(index, SLOW, Mapper.LEFT_TO_RIGHT);
+        if (journal != null)
+            journal.key(index);
 
-        index = mapperTranslate(index, LEFT, Mapper.LEFT_TO_RIGHT);
-        index = mapperTranslate(index, MIDDLE, Mapper.LEFT_TO_RIGHT);
-        index = mapperTranslate(index, RIGHT, Mapper.LEFT_TO_RIGHT);
+        worker.submit(index);
+    }
 
-        index = mapperTranslate(index, plugboard, Mapper.LEFT_TO_RIGHT);
-        index = mapperTranslate(index, lampboard, Mapper.LEFT_TO_RIGHT);
+    /**
+     * Queue a job for the EngineWorker, to be run after any earlier key
+     * presses. The job must call jobDone() on the FX thread when it finishes.
+     * @param job to run.
+     */
+    public void runJob(EngineWorker.Job job) {
+        if (journal != null)
+            journal.job();
 
-        if (isShow()) {
-            System.out.println();
-        }
+        worker.run(job);
+    }
 
-        return index;
+    /**
+     * Called on the FX thread when a job has finished, or been cancelled, to
+     * move the rotor spinners to the final positions and record them.
+     * @param offsets of the rotors after the job.
+     */
+    public void jobDone(int[] offsets) {
+        advancing = true;
+        for (int i = 0; i < ROTOR_COUNT; ++i)
+            if (getRotorIndex(i) != offsets[i])
+                getState(i).setRotorIndex(offsets[i]);
+        advancing = false;
+
+        // The EngineWorker is already at these offsets, and may have moved 
+        // on with later key presses.
+        if (journal != null)
+            journal.jobDone(offsets);
+        updateService();
     }
 
+    private MessageControl messageControl = null;
 
     /**
-     * Advance the Rotors and translate an index (numerical equivalent of the 
-     * letter) through the pipeline.
-     * @param index to translate.
-     * @return the translated index.
+     * Launch the Message Control to encipher a whole message, creating it
+     * the first time it is needed.
      */
-    public int translate(int index) {
-        advanceRotors();
-        updateRotorOffsets();
-        return translateIndex(index);
-    }
+    public void launchMessage() {
+        if (messageControl == null)
+            messageControl = new MessageControl(this);
 
+        messageControl.showControl();
+    }
 
-    private void buildTheMappers() {
-        updateKeyboard();
-        updatePlugboard();
-        updateReflector();
-        updateLampboard();
+    public ObservableList<Integer> getSettingsList()   { return settingsList; }
 
-        for (int i = 0; i < ROTOR_COUNT; ++i) {
-            addActiveRotorEntry(i);
-            setActiveRotorOffset(i);
-        }
+    /**
+     * Find a RotorData with the given id in the given list,
+     * @param list of Rotors to search.
+     * @param target id of Rotor.
+     * @return RotorData with matching id if found, entry 0 otherwise.
+     */
+    private RotorData getRotorData(HashMap<String, RotorData> list, String target) {
+        return list.get(target);
     }
 
+
+    // Set while the spinners are moved by key presses rather than the user.
+    private boolean advancing = false;
+
     private void initSettingsList() {
-        final int max = keyList649.length;
-        for (int i = 0; i < max; ++i) {
-            if (keyList649[i] != null)
+        final SettingsData[] keyList = EnigmaData.getKeyList();
+        for (int i = 0; i < keyList.length; ++i) {
+            if (keyList[i] != null)
                 settingsList.add(i);
         }
     }
@@ -705,7 +1032,6 @@ public class Model {
      * Initialize "Translation" panel.
      */
     private void initializeEncipher() {
-        buildTheMappers();
         initSettingsList();
     }
 
@@ -716,18 +1042,14 @@ public class Model {
      */
 
     public void dumpRotorWiring() {
-        for (RotorData rotor : rotorData) {
+        for (RotorData rotor : EnigmaData.getRotorData()) {
             Debug.info(DD, rotor.toString());
         }
         Debug.info(DD, "");
     }
 
     public int test1(char key) {
-        advanceRotors();
-        return translateIndex(key);
-        // updatePipeline();
-        // return translatePipeline(Rotor.charToIndex(key));
-        // return translate(Rotor.charToIndex(key));
+        return buildEngine().translate(Mapper.charToIndex(key));
     }
 
     public int test5() {
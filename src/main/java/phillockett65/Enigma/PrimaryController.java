@@ -36,6 +36,7 @@ import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TitledPane;
@@ -124,8 +125,12 @@ public class PrimaryController {
         // Only save window position just before saving state.
         model.setMainPos(stage.getX(), stage.getY());
 
+        // Let outstanding key presses move the rotors before saving.
+        model.stopWorker();
+
         // Write current state to disc using the latest version of DataStore.
-        DataStore1.writeData();
+        if (DataStore2.writeData())
+            model.closeJournal();
     }
 
     /**
@@ -486,6 +491,7 @@ public class PrimaryController {
      */
 
     private int currentKey = -1;
+    private final boolean[] pressed = new boolean[26];
 
     @FXML
     private CheckBox showStepsCheckbox;
@@ -505,11 +511,48 @@ public class PrimaryController {
     @FXML
     private TextField lampIO;
 
+    @FXML
+    private Button messageButton;
+
+    @FXML
+    private ComboBox<String> profileCombobox;
+
+    @FXML
+    private Button loadProfileButton;
+
+    @FXML
+    private Button saveProfileButton;
+
     @FXML
     void showStepsCheckboxActionPerformed(ActionEvent event) {
         model.setShow(showStepsCheckbox.isSelected());
     }
 
+    @FXML
+    void messageButtonOnAction(ActionEvent event) {
+        model.launchMessage();
+    }
+
+    private String getProfileName() {
+        final String name = profileCombobox.getEditor().getText();
+
+        return name == null ? "" : name.trim();
+    }
+
+    @FXML
+    void loadProfileButtonOnAction(ActionEvent event) {
+        final String name = getProfileName();
+        if (!name.isEmpty() && model.switchProfile(name))
+            syncUI();
+    }
+
+    @FXML
+    void saveProfileButtonOnAction(ActionEvent event) {
+        final String name = getProfileName();
+        if (!name.isEmpty() && model.saveProfile(name))
+            profileCombobox.getItems().setAll(model.getProfileNames());
+    }
+
 
     /**
      * Initialize "Translation" panel.
@@ -522,15 +565,23 @@ public class PrimaryController {
             syncUI();
         });
 
-        showStepsCheckbox.setTooltip(new Tooltip("Select to show each translation step on the command line"));
+        showStepsCheckbox.setTooltip(new Tooltip("Select to record each translation step to " + Model.TRACEFILE));
+        messageButton.setTooltip(new Tooltip("Encipher a whole message, pasted in or loaded from a file"));
         settingsChoicebox.setTooltip(new Tooltip("Select a settings entry from the Luftwaffe Enigma key list number 649"));
 
+        profileCombobox.getItems().setAll(model.getProfileNames());
+        profileCombobox.setTooltip(new Tooltip("Select a saved profile, or type a name to save one, in " + Model.PROFILEFILE));
+        loadProfileButton.setTooltip(new Tooltip("Switch the machine to the selected profile"));
+        saveProfileButton.setTooltip(new Tooltip("Save the current machine configuration as the named profile"));
+
         final char arrow = '\u2799';
         labelIO.setText("" + arrow);
 
         Circle circle = new Circle(25);
         keyIO.setShape(circle);
         lampIO.setShape(circle);
+
+        model.setResultListener(this::showResult);
     }
 
 
@@ -539,13 +590,22 @@ public class PrimaryController {
      * @param keyCode key to be processed
      */
     public void keyPress(KeyCode keyCode) {
-        if (currentKey == -1) {
-            currentKey = Mapper.letterToIndex(keyCode.getChar());
-            final int index = model.translate(currentKey);
+        // Letters typed as a profile name are not key presses.
+        if (profileCombobox.getEditor().isFocused())
+            return;
 
-            keyIO.setText(keyCode.getChar());
-            lampIO.setText(Mapper.indexToLetter(index));
-        }
+        final int index = Mapper.letterToIndex(keyCode.getChar());
+
+        // Ignore auto-repeat while a key is held down.
+        if (pressed[index])
+            return;
+
+        pressed[index] = true;
+        currentKey = index;
+        model.submitKey(index);
+
+        keyIO.setText(keyCode.getChar());
+        lampIO.setText("");
     }
 
     /**
@@ -554,6 +614,7 @@ public class PrimaryController {
      */
     public void keyRelease(KeyCode keyCode) {
         final int index = Mapper.letterToIndex(keyCode.getChar());
+        pressed[index] = false;
         if (currentKey == index) {
             currentKey = -1;
             keyIO.setText("");
@@ -561,4 +622,14 @@ public class PrimaryController {
         }
     }
 
+    /**
+     * Called on the FX thread at most once per pulse with the latest 
+     * enciphered key press. Light the lamp for it, if it is still held down.
+     * @param latest packed result, see EngineWorker.
+     */
+    private void showResult(int latest) {
+        if (EngineWorker.getKey(latest) == currentKey)
+            lampIO.setText(Mapper.indexToLetter(EngineWorker.getLamp(latest)));
+    }
+
 }
@@ -0,0 +1,391 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ProfileStore is a class that keeps many named machine configurations
+ * (DataStore2 records) in a single file. The file starts with a header that
+ * holds the position of an index of names, record offsets and lengths. The
+ * index is read when the store is opened, after which a profile is loaded by
+ * name with a single positional read, without reading any other profile.
+ *
+ * New profiles are appended after the current index, followed by a new
+ * index, and only then is the header updated to point at it. So an append
+ * never rewrites existing records and a crash leaves the previous index in
+ * place. Replaced profiles and old indices are left as garbage, which
+ * append() removes with compact() once it outweighs the live data, so a 
+ * store that is appended to one profile at a time still grows linearly.
+ *
+ * Another process may append to, or compact, the same file. Writers hold a
+ * FileLock on the whole file and refresh the index once they have it, so no
+ * profiles are lost between two writers. A compaction renames the new file
+ * over the old one while still holding the lock on the old one, so a writer
+ * that was waiting finds the file replaced, reopens it and locks again.
+ * refresh() picks up the changes of other processes for readers.
+ */
+package phillockett65.Enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class ProfileStore implements Closeable {
+
+    public static final int MAGIC = 0x454E3350;     // "EN3P"
+    public static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 4 + 2 + 8;
+
+    private final Path path;
+    private FileChannel channel;
+    private Object fileKey;
+
+    private final HashMap<String, Entry> index = new HashMap<String, Entry>();
+    private long indexOffset;
+
+
+    /************************************************************************
+     * Support code for the index entries.
+     */
+
+    private static class Entry {
+        final long offset;
+        final int length;
+
+        Entry(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+
+    /************************************************************************
+     * Support code for reading and writing blocks.
+     */
+
+    private ByteBuffer readBlock(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException(path + " is truncated");
+        }
+        buffer.flip();
+
+        return buffer;
+    }
+
+    private void writeBlock(long position, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer, position + buffer.position());
+    }
+
+    private static byte[] toBytes(DataStore2 store) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            store.write(out);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static byte[] indexToBytes(Map<String, Entry> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries.size() * 24 + 4);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> item : entries.entrySet()) {
+                out.writeUTF(item.getKey());
+                out.writeLong(item.getValue().offset);
+                out.writeInt(item.getValue().length);
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private void writeHeader(long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putShort((short)VERSION);
+        header.putLong(offset);
+        header.flip();
+        writeBlock(0, header);
+    }
+
+    private long readHeader() throws IOException {
+        ByteBuffer header = readBlock(0, HEADER_SIZE);
+        if (header.getInt() != MAGIC)
+            throw new IOException(path + " is not a profile store");
+
+        final int version = header.getShort();
+        if (version != VERSION)
+            throw new IOException(path + " has unsupported version " + version);
+
+        return header.getLong();
+    }
+
+    private void readIndex() throws IOException {
+        indexOffset = readHeader();
+        final long size = channel.size() - indexOffset;
+        ByteBuffer block = readBlock(indexOffset, (int)size);
+
+        DataInputStream in = new DataInputStream(
+            new ByteArrayInputStream(block.array(), 0, block.limit()));
+        final int count = in.readInt();
+        for (int i = 0; i < count; ++i) {
+            final String name = in.readUTF();
+            final long offset = in.readLong();
+            final int length = in.readInt();
+            index.put(name, new Entry(offset, length));
+        }
+    }
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    private ProfileStore(Path path) {
+        this.path = path;
+    }
+
+    private Object readFileKey() throws IOException {
+        return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+    }
+
+    /**
+     * Open a profile store, creating an empty one if the file does not exist.
+     * @param fileName of the profile store.
+     * @return the open ProfileStore.
+     * @throws IOException if the file cannot be opened or is not a store.
+     */
+    public static ProfileStore open(String fileName) throws IOException {
+        ProfileStore store = new ProfileStore(new File(fileName).getAbsoluteFile().toPath());
+        store.channel = FileChannel.open(store.path, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try (FileLock lock = store.channel.lock()) {
+            store.fileKey = store.readFileKey();
+            if (store.channel.size() == 0) {
+                store.indexOffset = HEADER_SIZE;
+                store.writeBlock(HEADER_SIZE, ByteBuffer.wrap(indexToBytes(store.index)));
+                store.writeHeader(HEADER_SIZE);
+                store.channel.force(true);
+            } else {
+                store.readIndex();
+            }
+        } catch (IOException e) {
+            store.close();
+            throw e;
+        }
+
+        return store;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    public Set<String> getNames() { return Collections.unmodifiableSet(index.keySet()); }
+    public boolean contains(String name) { return index.containsKey(name); }
+    public int size() { return index.size(); }
+
+    /**
+     * Load a single profile by name, without reading any other profile.
+     * @param name of the profile.
+     * @return the profile, or null if there is no profile with that name.
+     * @throws IOException if the profile cannot be read.
+     */
+    public DataStore2 load(String name) throws IOException {
+        final Entry entry = index.get(name);
+        if (entry == null)
+            return null;
+
+        ByteBuffer block = readBlock(entry.offset, entry.length);
+
+        return DataStore2.read(new DataInputStream(
+            new ByteArrayInputStream(block.array(), 0, block.limit())));
+    }
+
+    /**
+     * Lock the store against other writers and refresh the index, so that
+     * anything they wrote while this process waited is kept. If the file was
+     * replaced by a compaction while waiting, the new file is locked instead.
+     * @return the lock, held on the current channel.
+     * @throws IOException if the store cannot be locked or read.
+     */
+    private FileLock lock() throws IOException {
+        while (true) {
+            final FileLock lock = channel.lock();
+            final Object key = readFileKey();
+            if ((key == null) || key.equals(fileKey)) {
+                refresh();
+
+                return lock;
+            }
+
+            lock.release();
+            refresh();
+        }
+    }
+
+    /**
+     * Append profiles to the store, replacing any with the same name.
+     * Existing records are not rewritten, unless the store is compacted
+     * because the replaced records now outweigh the live ones. The index in
+     * memory is only changed once the new index is on disc.
+     * @param profiles to append, by name.
+     * @throws IOException if the profiles cannot be written.
+     */
+    public void append(Map<String, DataStore2> profiles) throws IOException {
+        final FileLock lock = lock();
+        try {
+            appendLocked(profiles);
+        } finally {
+            // Already released if a compaction closed the channel.
+            if (lock.isValid())
+                lock.release();
+        }
+    }
+
+    private void appendLocked(Map<String, DataStore2> profiles) throws IOException {
+        HashMap<String, Entry> next = new HashMap<String, Entry>(index);
+        long position = channel.size();
+
+        for (Map.Entry<String, DataStore2> profile : profiles.entrySet()) {
+            final byte[] bytes = toBytes(profile.getValue());
+            writeBlock(position, ByteBuffer.wrap(bytes));
+            next.put(profile.getKey(), new Entry(position, bytes.length));
+            position += bytes.length;
+        }
+
+        final byte[] indexBytes = indexToBytes(next);
+        writeBlock(position, ByteBuffer.wrap(indexBytes));
+        channel.force(false);
+
+        writeHeader(position);
+        channel.force(false);
+
+        index.clear();
+        index.putAll(next);
+        indexOffset = position;
+
+        long live = HEADER_SIZE + indexBytes.length;
+        for (Entry entry : index.values())
+            live += entry.length;
+
+        if (position + indexBytes.length - live > live)
+            compactLocked();
+    }
+
+    /**
+     * Append a single profile to the store, replacing any with the same name.
+     * @param name of the profile.
+     * @param store profile to append.
+     * @throws IOException if the profile cannot be written.
+     */
+    public void append(String name, DataStore2 store) throws IOException {
+        append(Collections.singletonMap(name, store));
+    }
+
+    /**
+     * Rewrite the store without replaced profiles or old indices. The new
+     * file is written alongside and renamed over the old one.
+     * @throws IOException if the store cannot be rewritten.
+     */
+    public void compact() throws IOException {
+        final FileLock lock = lock();
+        try {
+            compactLocked();
+        } finally {
+            if (lock.isValid())
+                lock.release();
+        }
+    }
+
+    /**
+     * Rewrite the store, which must be locked. The lock is released when the
+     * old file is closed, only after the new one has replaced it.
+     */
+    private void compactLocked() throws IOException {
+        HashMap<String, DataStore2> profiles = new HashMap<String, DataStore2>();
+        for (String name : index.keySet())
+            profiles.put(name, load(name));
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.deleteIfExists(temp);
+        try (ProfileStore fresh = open(temp.toString())) {
+            fresh.append(profiles);
+        }
+
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel.close();
+
+        index.clear();
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        fileKey = readFileKey();
+        readIndex();
+    }
+
+    /**
+     * Re-read the index if another process has appended to the store, or 
+     * reopen the file if it has been compacted, since the index was read.
+     * @return true if the index has been re-read, so any profiles already
+     * loaded may be out of date.
+     * @throws IOException if the store cannot be read.
+     */
+    public boolean refresh() throws IOException {
+        final Object key = readFileKey();
+        if ((key != null) && !key.equals(fileKey)) {
+            channel.close();
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            fileKey = readFileKey();
+        } else
+        if (readHeader() == indexOffset) {
+            return false;
+        }
+
+        index.clear();
+        readIndex();
+
+        return true;
+    }
+
+}
@@ -113,6 +113,7 @@ public class Rotor extends Mapper {
 
     public boolean isTurnoverPoint(int index) { return turnover[index]; }
     public boolean isNotchPoint(int index) { return notches[index]; }
+    public int getOffset() { return offset; }
 
     private int leftToRight(int index) { return leftMap[index]; }
     private int rightToLeft(int index) { return rightMap[index]; }
@@ -123,7 +124,8 @@ public class Rotor extends Mapper {
      */
 
     public void setOffset(int value) { 
-        Debug.trace(DD, "setOffset(" + getId() + " " + value + ")");
+        if (Debug.isTraceEnabled(DD))
+            Debug.trace(DD, "setOffset(" + getId() + " " + value + ")");
         offset = value % 26;
         back = 26 - offset;
     }
@@ -166,6 +168,31 @@ public class Rotor extends Mapper {
         return new Pair<Integer, String>(output, message);
     }
 
+    /**
+     * Translates an index (numerical equivalent of the letter) to another 
+     * using the map and the current offset, without building the translation 
+     * String.
+     * @param direction of mapping.
+     * @param index to translate.
+     * @return the translated index.
+     */
+    public int translate(int direction, int index) {
+        return rotate(swapWorker(direction, rotate(index, offset)), back);
+    }
+
+    /**
+     * Translates an index (numerical equivalent of the letter) to another 
+     * using the map and the given offset. The offset of this Rotor is not 
+     * used or changed, so a single Rotor can be shared by many Engines.
+     * @param direction of mapping.
+     * @param index to translate.
+     * @param position (0..25) offset of the rotor.
+     * @return the translated index.
+     */
+    public int translate(int direction, int index, int position) {
+        return rotate(swapWorker(direction, rotate(index, position)), 26 - position);
+    }
+
     /**
      * Update the left and right mappings using the map and ring setting.
      * @param index of the required ring setting.
@@ -121,17 +121,20 @@ public class RotorControl extends VBox {
         Debug.trace(DD, "initListeners()");
 
         wheelChoicebox.valueProperty().addListener( (v, oldValue, newValue) -> {
-            Debug.trace(DD, "wheelChoicebox[" + id + "] = " + newValue);
+            if (Debug.isTraceEnabled(DD))
+                Debug.trace(DD, "wheelChoicebox[" + id + "] = " + newValue);
             wheelChoicebox.fireEvent(new RotorEvent(RotorEvent.WHEEL_CHOICE, id));
         });
 
         ringSettingSpinner.valueProperty().addListener( (v, oldValue, newValue) -> {
-            Debug.trace(DD, "ringSettingSpinner[" + id + "] = " + newValue);
+            if (Debug.isTraceEnabled(DD))
+                Debug.trace(DD, "ringSettingSpinner[" + id + "] = " + newValue);
             ringSettingSpinner.fireEvent(new RotorEvent(RotorEvent.RING_SETTING, id));
         });
 
         rotorOffsetSpinner.valueProperty().addListener( (v, oldValue, newValue) -> {
-            Debug.trace(DD, "rotorOffsetSpinner[" + id + "] = " + newValue);
+            if (Debug.isTraceEnabled(DD))
+                Debug.trace(DD, "rotorOffsetSpinner[" + id + "] = " + newValue);
             rotorOffsetSpinner.fireEvent(new RotorEvent(RotorEvent.ROTOR_OFFSET, id));
         });
     }
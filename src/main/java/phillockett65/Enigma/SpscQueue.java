@@ -0,0 +1,106 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SpscQueue is a bounded, lock-free queue for exactly one producer thread and
+ * one consumer thread. Neither side ever blocks: offer() returns false when
+ * the queue is full and poll() returns null when it is empty. Each side keeps
+ * a cached copy of the other side's position, so the shared positions are
+ * only read when the cached copy says the queue is full or empty.
+ */
+package phillockett65.Enigma;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SpscQueue<E> {
+
+    private final Object[] items;
+    private final int mask;
+
+    private final AtomicLong head = new AtomicLong();  // Next to poll.
+    private final AtomicLong tail = new AtomicLong();  // Next to offer.
+
+    private long headCache = 0;     // Only used by the producer.
+    private long tailCache = 0;     // Only used by the consumer.
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param capacity of the queue, rounded up to a power of 2.
+     */
+    public SpscQueue(int capacity) {
+        final int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        items = new Object[size];
+        mask = size - 1;
+    }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    public int capacity() { return items.length; }
+    public boolean isEmpty() { return head.get() == tail.get(); }
+
+    /**
+     * Add an item, called by the producer thread only.
+     * @param item to add, must not be null.
+     * @return true if the item was added, false if the queue is full.
+     */
+    public boolean offer(E item) {
+        final long position = tail.get();
+        if (position - headCache >= items.length) {
+            headCache = head.get();
+            if (position - headCache >= items.length)
+                return false;
+        }
+
+        items[(int)(position & mask)] = item;
+        tail.lazySet(position + 1);
+
+        return true;
+    }
+
+    /**
+     * Remove an item, called by the consumer thread only.
+     * @return the oldest item, or null if the queue is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        final long position = head.get();
+        if (position >= tailCache) {
+            tailCache = tail.get();
+            if (position >= tailCache)
+                return null;
+        }
+
+        final int slot = (int)(position & mask);
+        final E item = (E)items[slot];
+        items[slot] = null;
+        head.lazySet(position + 1);
+
+        return item;
+    }
+
+}
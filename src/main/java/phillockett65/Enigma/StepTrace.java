@@ -0,0 +1,186 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * StepTrace is a class that records every translation step of every letter
+ * in a compact binary form, as a fast alternative to printing each step.
+ * Records are written into a preallocated buffer which is written to the file
+ * whenever it fills. StepTraceViewer renders a trace as text.
+ *
+ * File format: MAGIC (int), VERSION (short), then a sequence of records:
+ *   LABEL: type (byte), label id (byte), label (UTF).
+ *   STEP:  type (byte), position (int), stage count (byte), then for each
+ *          stage: label id, rotor offset (NO_OFFSET for a plain mapper),
+ *          input index and output index (all bytes).
+ * A label record is written the first time each mapper id is used.
+ */
+package phillockett65.Enigma;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+public class StepTrace implements Closeable {
+
+    public static final int MAGIC = 0x454E3354;     // "EN3T"
+    public static final int VERSION = 1;
+
+    public static final byte LABEL = 1;
+    public static final byte STEP = 2;
+    public static final int NO_OFFSET = 0xFF;
+
+    public static final int MAX_STAGES = 16;
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final int MAX_STEP_SIZE = 1 + 4 + 1 + MAX_STAGES * 4;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final HashMap<String, Integer> labels = new HashMap<String, Integer>();
+
+    private int countPosition;
+    private int stages;
+
+
+    /************************************************************************
+     * Support code for the buffer.
+     */
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    private void reserve(int size) throws IOException {
+        if (buffer.remaining() < size)
+            flush();
+    }
+
+    private int labelId(String label) throws IOException {
+        final Integer id = labels.get(label);
+        if (id != null)
+            return id;
+
+        final int next = labels.size();
+        final byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+        reserve(1 + 1 + 2 + bytes.length);
+        buffer.put(LABEL);
+        buffer.put((byte)next);
+        buffer.putShort((short)bytes.length);
+        buffer.put(bytes);
+        labels.put(label, next);
+
+        return next;
+    }
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Create a new trace file, replacing any existing one.
+     * @param fileName of the trace.
+     * @throws IOException if the file cannot be created.
+     */
+    public StepTrace(String fileName) throws IOException {
+        channel = FileChannel.open(new File(fileName).toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        buffer.putInt(MAGIC);
+        buffer.putShort((short)VERSION);
+    }
+
+    /**
+     * Write any buffered records and close the file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+
+    /************************************************************************
+     * Support code for recording.
+     */
+
+    /**
+     * Start the record of a single letter.
+     * @param position of the letter in the run.
+     * @throws IOException if the buffer cannot be written.
+     */
+    public void begin(int position) throws IOException {
+        reserve(MAX_STEP_SIZE);
+        buffer.put(STEP);
+        buffer.putInt(position);
+        countPosition = buffer.position();
+        buffer.put((byte)0);
+        stages = 0;
+    }
+
+    /**
+     * Record a single stage of the current letter.
+     * @param label id of the mapper.
+     * @param offset of the rotor, or NO_OFFSET for a plain mapper.
+     * @param input index.
+     * @param output index.
+     * @throws IOException if the buffer cannot be written.
+     */
+    public void stage(String label, int offset, int input, int output) throws IOException {
+        if (stages == MAX_STAGES)
+            return;
+
+        Integer id = labels.get(label);
+        if (id == null) {
+            // A label record can not be written inside a step, so move the
+            // partial step after it.
+            final int start = countPosition - 5;
+            final int length = buffer.position() - start;
+            byte[] step = new byte[length];
+            buffer.position(start);
+            buffer.get(step);
+            buffer.position(start);
+
+            id = labelId(label);
+
+            reserve(MAX_STEP_SIZE);
+            countPosition = buffer.position() + 5;
+            buffer.put(step);
+        }
+
+        buffer.put((byte)(int)id);
+        buffer.put((byte)offset);
+        buffer.put((byte)input);
+        buffer.put((byte)output);
+        buffer.put(countPosition, (byte)++stages);
+    }
+
+}
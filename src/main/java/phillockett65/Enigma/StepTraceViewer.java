@@ -0,0 +1,141 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * StepTraceViewer is a class that renders a range of letters from a file
+ * written by StepTrace, one line per letter, in the same form as the show
+ * steps output: "I[A](B->C)  " for a rotor and "Plugboard(B->C)  " for a
+ * plain mapper.
+ *
+ * Usage: StepTraceViewer <trace file> [first position] [last position]
+ */
+package phillockett65.Enigma;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+public class StepTraceViewer {
+
+    private final String fileName;
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param fileName of the trace.
+     */
+    public StepTraceViewer(String fileName) {
+        this.fileName = fileName;
+    }
+
+
+    /************************************************************************
+     * Support code for rendering.
+     */
+
+    private static void renderStage(StringBuilder line, String label, int offset, int input, int output) {
+        line.append(label);
+        if (offset != StepTrace.NO_OFFSET)
+            line.append('[').append(Mapper.indexToLetter(offset)).append(']');
+
+        line.append('(').append(Mapper.indexToLetter(input))
+            .append("->").append(Mapper.indexToLetter(output)).append(")  ");
+    }
+
+    /**
+     * Render the letters in the given range of positions.
+     * @param first position to render.
+     * @param last position to render, inclusive.
+     * @param out stream to render to.
+     * @return the number of letters rendered.
+     * @throws IOException if the trace cannot be read or is not a trace.
+     */
+    public int render(int first, int last, PrintStream out) throws IOException {
+        ArrayList<String> labels = new ArrayList<String>();
+        StringBuilder line = new StringBuilder(256);
+        byte[] stage = new byte[4 * StepTrace.MAX_STAGES];
+        int count = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+            if (in.readInt() != StepTrace.MAGIC)
+                throw new IOException(fileName + " is not a step trace");
+
+            final int version = in.readShort();
+            if (version != StepTrace.VERSION)
+                throw new IOException(fileName + " has unsupported version " + version);
+
+            while (true) {
+                final int type = in.read();
+                if (type == -1)
+                    break;
+
+                if (type == StepTrace.LABEL) {
+                    final int id = in.readUnsignedByte();
+                    final String label = in.readUTF();
+                    while (labels.size() <= id)
+                        labels.add("");
+                    labels.set(id, label);
+
+                    continue;
+                }
+
+                final int position = in.readInt();
+                final int stages = in.readUnsignedByte();
+                in.readFully(stage, 0, stages * 4);
+                if ((position < first) || (position > last))
+                    continue;
+
+                line.setLength(0);
+                for (int i = 0; i < stages * 4; i += 4)
+                    renderStage(line, labels.get(stage[i] & 0xFF), stage[i + 1] & 0xFF,
+                        stage[i + 2], stage[i + 3]);
+
+                out.println(line);
+                ++count;
+            }
+        } catch (EOFException e) {
+            // The trace was not closed, render what is complete.
+        }
+
+        return count;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: StepTraceViewer <trace file> [first position] [last position]");
+
+            return;
+        }
+
+        final int first = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        final int last = args.length > 2 ? Integer.parseInt(args[2]) : Integer.MAX_VALUE;
+
+        new StepTraceViewer(args[0]).render(first, last, System.out);
+    }
+
+}
@@ -0,0 +1,48 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * DoubleStepEvent is the Java Flight Recorder event committed each time the
+ * middle rotor double steps, recording the rotor positions after the step.
+ */
+package phillockett65.Metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("phillockett65.Enigma.DoubleStep")
+@Label("Double Step")
+@Category({ "Enigma", "Engine" })
+@Description("Double step of the middle rotor")
+public class DoubleStepEvent extends Event {
+
+    @Label("Left Offset")
+    public int left;
+
+    @Label("Middle Offset")
+    public int middle;
+
+    @Label("Right Offset")
+    public int right;
+
+}
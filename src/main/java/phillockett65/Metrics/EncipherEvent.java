@@ -0,0 +1,44 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EncipherEvent is the Java Flight Recorder event committed for each bulk
+ * encipher call, recording the number of letters and (as the event duration)
+ * the time taken.
+ */
+package phillockett65.Metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("phillockett65.Enigma.Encipher")
+@Label("Bulk Encipher")
+@Category({ "Enigma", "Engine" })
+@Description("Enciphering of a block of letters")
+public class EncipherEvent extends Event {
+
+    @Label("Length")
+    @Description("Number of letters enciphered")
+    public int length;
+
+}
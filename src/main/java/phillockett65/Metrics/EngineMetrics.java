@@ -0,0 +1,218 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EngineMetrics is the singleton class that counts the work done by the
+ * engine and the GUI model, and makes the counts available over JMX once
+ * register() has been called. All counters are LongAdders, so threads
+ * enciphering at the same time do not contend on a shared counter.
+ */
+package phillockett65.Metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import phillockett65.Debug.Debug;
+
+public class EngineMetrics implements EngineMetricsMXBean {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    public static final String NAME = "phillockett65.Enigma:type=EngineMetrics";
+
+    private static final EngineMetrics metrics = new EngineMetrics();
+
+    private final LongAdder letters = new LongAdder();
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder doubleSteps = new LongAdder();
+    private final LongAdder rotorRebuilds = new LongAdder();
+    private final LongAdder mapperRebuilds = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private long sampleTime = System.nanoTime();
+    private long sampleLetters = 0;
+
+    private volatile long startupMillis = 0;
+    private volatile long startMillis = 0;
+
+
+    /************************************************************************
+     * Support code for the Initialization of the EngineMetrics.
+     */
+
+    /**
+     * Private default constructor - part of the Singleton Design Pattern.
+     * Called at initialization only, constructs the single private instance.
+     */
+    private EngineMetrics() {
+    }
+
+    /**
+     * Singleton implementation.
+     * @return the only instance of the metrics.
+     */
+    public static EngineMetrics getInstance() { return metrics; }
+
+    /**
+     * Register the metrics with the platform MBean server, so they can be
+     * viewed with jconsole. Registering more than once has no effect.
+     * @return true if the metrics are registered, false otherwise.
+     */
+    public static synchronized boolean register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(NAME);
+            if (!server.isRegistered(name))
+                server.registerMBean(metrics, name);
+        } catch (JMException e) {
+            Debug.critical(DD, e.getMessage());
+
+            return false;
+        }
+
+        return true;
+    }
+
+
+    /************************************************************************
+     * Support code for recording.
+     */
+
+    /**
+     * Count a complete message and record its latency.
+     * @param length number of letters enciphered.
+     * @param nanos time taken.
+     */
+    public void message(int length, long nanos) {
+        letters.add(length);
+        message(nanos);
+    }
+
+    /**
+     * Count a complete message whose letters have already been counted 
+     * by letters(), block by block, and record its latency.
+     * @param nanos time taken to encipher the whole message.
+     */
+    public void message(long nanos) {
+        messages.increment();
+        latency.record(nanos);
+    }
+
+    public void letter() { letters.increment(); }
+    public void letters(int count) { letters.add(count); }
+    public void doubleStep() { doubleSteps.increment(); }
+    public void rotorRebuild() { rotorRebuilds.increment(); }
+    public void mapperRebuild() { mapperRebuilds.increment(); }
+
+    /**
+     * Record how long the application took to start. These are not cleared
+     * by reset().
+     * @param uptime milliseconds from the start of the JVM until the main 
+     * window was ready.
+     * @param start milliseconds spent in Application.start().
+     */
+    public void startup(long uptime, long start) {
+        startupMillis = uptime;
+        startMillis = start;
+    }
+
+
+    /************************************************************************
+     * Support code for EngineMetricsMXBean.
+     */
+
+    private static double toMicros(long nanos) { return nanos / 1000.0; }
+
+    @Override
+    public long getLettersEnciphered() { return letters.sum(); }
+
+    @Override
+    public long getMessagesProcessed() { return messages.sum(); }
+
+    /**
+     * Get the rate since the previous call, so a JMX client polling at a
+     * regular interval sees the current throughput.
+     * @return letters enciphered per second since the previous call.
+     */
+    @Override
+    public synchronized double getLettersPerSecond() {
+        final long now = System.nanoTime();
+        final long count = letters.sum();
+        final long elapsed = now - sampleTime;
+        final double output = elapsed > 0 ? (count - sampleLetters) * 1e9 / elapsed : 0;
+
+        sampleTime = now;
+        sampleLetters = count;
+
+        return output;
+    }
+
+    @Override
+    public long getLatencyCount() { return latency.getCount(); }
+
+    @Override
+    public double getLatencyMedianMicros() { return toMicros(latency.getPercentile(50)); }
+
+    @Override
+    public double getLatency90Micros() { return toMicros(latency.getPercentile(90)); }
+
+    @Override
+    public double getLatency99Micros() { return toMicros(latency.getPercentile(99)); }
+
+    @Override
+    public double getLatency999Micros() { return toMicros(latency.getPercentile(99.9)); }
+
+    @Override
+    public double getLatencyMaxMicros() { return toMicros(latency.getMax()); }
+
+    @Override
+    public long getDoubleSteps() { return doubleSteps.sum(); }
+
+    @Override
+    public long getRotorRebuilds() { return rotorRebuilds.sum(); }
+
+    @Override
+    public long getMapperRebuilds() { return mapperRebuilds.sum(); }
+
+    @Override
+    public long getStartupMillis() { return startupMillis; }
+
+    @Override
+    public long getStartMillis() { return startMillis; }
+
+    @Override
+    public synchronized void reset() {
+        letters.reset();
+        messages.reset();
+        doubleSteps.reset();
+        rotorRebuilds.reset();
+        mapperRebuilds.reset();
+        latency.reset();
+
+        sampleTime = System.nanoTime();
+        sampleLetters = 0;
+    }
+
+}
@@ -0,0 +1,49 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EngineMetricsMXBean is the management interface of EngineMetrics, as seen
+ * by JMX clients such as jconsole.
+ */
+package phillockett65.Metrics;
+
+public interface EngineMetricsMXBean {
+
+    public long getLettersEnciphered();
+    public long getMessagesProcessed();
+    public double getLettersPerSecond();
+
+    public long getLatencyCount();
+    public double getLatencyMedianMicros();
+    public double getLatency90Micros();
+    public double getLatency99Micros();
+    public double getLatency999Micros();
+    public double getLatencyMaxMicros();
+
+    public long getDoubleSteps();
+    public long getRotorRebuilds();
+    public long getMapperRebuilds();
+
+    public long getStartupMillis();
+    public long getStartMillis();
+
+    public void reset();
+
+}
@@ -0,0 +1,154 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * LatencyHistogram is a class that records latencies into log-linear buckets
+ * in the style of HdrHistogram: each power of 2 range is split into 64 equal
+ * sub-buckets, giving a worst case error of under 2% at any magnitude.
+ * Recording is a single atomic increment, so many threads can record at once
+ * without locking. Percentiles are read from a snapshot of the counts.
+ */
+package phillockett65.Metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 6;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+
+    /************************************************************************
+     * Support code for the bucket index.
+     */
+
+    /**
+     * Find the bucket for a value. Values below SUB_COUNT have a bucket each,
+     * above that each power of 2 has SUB_COUNT buckets.
+     * @param value to find the bucket for, must not be negative.
+     * @return the bucket index.
+     */
+    private static int indexOf(long value) {
+        if (value < SUB_COUNT)
+            return (int)value;
+
+        final int msb = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = msb - SUB_BITS;
+        final int sub = (int)(value >>> shift) & (SUB_COUNT - 1);
+
+        return (shift + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * Find the lowest value that is recorded in a bucket.
+     * @param index of the bucket.
+     * @return the lowest value of the bucket.
+     */
+    private static long lowestOf(int index) {
+        if (index < SUB_COUNT)
+            return index;
+
+        final int shift = index / SUB_COUNT - 1;
+        final long sub = index % SUB_COUNT;
+
+        return (SUB_COUNT | sub) << shift;
+    }
+
+    /**
+     * Find the value in the middle of a bucket.
+     * @param index of the bucket.
+     * @return the middle value of the bucket.
+     */
+    private static long middleOf(int index) {
+        if (index < SUB_COUNT)
+            return index;
+
+        final int shift = index / SUB_COUNT - 1;
+
+        return lowestOf(index) + ((1L << shift) >> 1);
+    }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    /**
+     * Record a single value without locking.
+     * @param value to record, negative values are recorded as 0.
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+
+        counts.incrementAndGet(indexOf(value));
+        total.increment();
+        max.accumulate(value);
+    }
+
+    public long getCount() { return total.sum(); }
+    public long getMax() { return max.get(); }
+
+    /**
+     * Get the value at a percentile of the recorded values.
+     * @param percentile (0..100) required.
+     * @return the value at the percentile, 0 if nothing has been recorded.
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+
+        if (count == 0)
+            return 0;
+
+        final long target = Math.max(1, (long)Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            seen += snapshot[i];
+            if (seen >= target)
+                return Math.min(middleOf(i), getMax());
+        }
+
+        return getMax();
+    }
+
+    /**
+     * Clear all recorded values. Values recorded while clearing may be lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; ++i)
+            counts.set(i, 0);
+
+        total.reset();
+        max.reset();
+    }
+
+}
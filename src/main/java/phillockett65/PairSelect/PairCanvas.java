@@ -0,0 +1,552 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * PairCanvas is an alternative to PairSelect that draws the plugs, labels and
+ * links on a single Canvas instead of building a node for each of them. The
+ * plug under the mouse is found arithmetically from the same layout as
+ * PairSelect uses, and only the area affected by each change is redrawn.
+ */
+package phillockett65.PairSelect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import javafx.geometry.Point2D;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Tooltip;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
+import javafx.scene.paint.RadialGradient;
+import javafx.scene.shape.StrokeLineCap;
+import phillockett65.Debug.Debug;
+import phillockett65.PairSelect.PairSelect.PairEvent;
+
+public class PairCanvas extends Canvas implements PairEditor {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    private static final int PLUG_COUNT = PairSelect.STEPS * 2;
+
+    private static final double buttonSize = 14.0;
+    private static final double lineWidth = 5.0;
+    private static final double guideWidth = 5.0;
+    private static final double unguideWidth = 4.0;
+    private static final double margin = 2.0;
+
+    // Bounds of a label relative to its base line position.
+    private static final double labelLeft = -2.0;
+    private static final double labelTop = -16.0;
+    private static final double labelWidth = 16.0;
+    private static final double labelHeight = 20.0;
+
+    // Plug colours matching the styles in PairSelect.css.
+    private static final Paint unusedCol = RadialGradient.valueOf("radial-gradient(center 50% 25%, radius 100%, #A0A0A0, #606060)");
+    private static final Paint usedCol = RadialGradient.valueOf("radial-gradient(center 50% 25%, radius 100%, #FFFF00, #A0A000)");
+    private static final Paint availableCol = RadialGradient.valueOf("radial-gradient(center 50% 25%, radius 100%, #80FF80, #00FF00)");
+    private static final Paint unavailableCol = RadialGradient.valueOf("radial-gradient(center 50% 25%, radius 100%, #FF8080, #FF0000)");
+
+    private final Color guideCol = Color.SILVER;
+    private final Color unguideCol = Color.MAROON;
+    private final Color lineCol = Color.GREEN;
+    private final Color textCol = Color.WHITE;
+
+    private final boolean plugboard;
+    private final Point2D[] points;
+    private final Point2D[] labelPoints;
+    private final GraphicsContext gc;
+    private final Tooltip tip = new Tooltip();
+
+    // Lower letter of each pair in the order the pairs were made, and the
+    // other letter of the pair for every letter, or -1 if it is not used.
+    private final ArrayList<Integer> pairList = new ArrayList<Integer>();
+    private final int[] partner = new int[PLUG_COUNT];
+
+    // Bit set of the letters not in a pair.
+    private static final int ALL_PLUGS = (1 << PLUG_COUNT) - 1;
+    private int unused = ALL_PLUGS;
+
+    private boolean dragged = false;
+    private int currentIndex = -1;
+    private int hoverIndex = -1;
+    private double guideX;
+    private double guideY;
+
+
+    /************************************************************************
+     * Support code for the state of the pairs.
+     */
+
+    public boolean isPlugboard() { return plugboard; }
+    public boolean isReflector() { return !isPlugboard(); }
+
+    public boolean hasPairs() { return !pairList.isEmpty(); }
+    public int size() { return pairList.size(); }
+
+    public String getText(int index) {
+        if (index >= size())
+            return "";
+
+        final int first = pairList.get(index);
+
+        return PairSelect.indexToLetter(first) + PairSelect.indexToLetter(partner[first]);
+    }
+
+    private boolean isUsed(int index) {
+        return (partner[index] != -1) || (dragged && (index == currentIndex));
+    }
+
+    private boolean isPairingDone() {
+        return isReflector() && (pairList.size() >= PairSelect.PAIR_COUNT);
+    }
+
+    private boolean isCableAvailable() {
+        return isReflector() || (pairList.size() < PairSelect.WIRE_COUNT);
+    }
+
+    private void connect(int a, int b) {
+        partner[a] = b;
+        partner[b] = a;
+        pairList.add(Math.min(a, b));
+        unused &= ~((1 << a) | (1 << b));
+    }
+
+    private void disconnect(int a) {
+        final int b = partner[a];
+        partner[a] = -1;
+        partner[b] = -1;
+        pairList.remove(Integer.valueOf(Math.min(a, b)));
+        unused |= (1 << a) | (1 << b);
+    }
+
+    private void reset() {
+        pairList.clear();
+        Arrays.fill(partner, -1);
+        unused = ALL_PLUGS;
+        dragged = false;
+        currentIndex = -1;
+    }
+
+
+    /************************************************************************
+     * Support code for drawing.
+     */
+
+    private Paint plugColour(int index) {
+        final boolean used = isUsed(index);
+
+        if (index == hoverIndex)
+            return used ? unavailableCol : availableCol;
+
+        return used ? usedCol : unusedCol;
+    }
+
+    private static boolean intersects(double x, double y, double w, double h,
+        double minX, double minY, double maxX, double maxY) {
+        return (x < maxX) && (x + w > minX) && (y < maxY) && (y + h > minY);
+    }
+
+    /**
+     * Redraw everything that overlaps a rectangle, clipped to the rectangle.
+     * @param minX left edge.
+     * @param minY top edge.
+     * @param maxX right edge.
+     * @param maxY bottom edge.
+     */
+    private void repaint(double minX, double minY, double maxX, double maxY) {
+        minX = Math.max(Math.floor(minX), 0.0);
+        minY = Math.max(Math.floor(minY), 0.0);
+        maxX = Math.min(Math.ceil(maxX), getWidth());
+        maxY = Math.min(Math.ceil(maxY), getHeight());
+        if ((minX >= maxX) || (minY >= maxY))
+            return;
+
+        gc.save();
+        gc.beginPath();
+        gc.rect(minX, minY, maxX - minX, maxY - minY);
+        gc.clip();
+        gc.clearRect(minX, minY, maxX - minX, maxY - minY);
+
+        gc.setLineCap(StrokeLineCap.ROUND);
+        if (dragged) {
+            final boolean available = isCableAvailable();
+            gc.setStroke(available ? guideCol : unguideCol);
+            gc.setLineWidth(available ? guideWidth : unguideWidth);
+            gc.strokeLine(points[currentIndex].getX(), points[currentIndex].getY(), guideX, guideY);
+        }
+
+        final double size = buttonSize * 2;
+        gc.setLineWidth(1.0);
+        gc.setStroke(textCol);
+        gc.setFill(textCol);
+        for (int index = 0; index < PLUG_COUNT; ++index) {
+            final Point2D point = points[index];
+            if (intersects(point.getX() - buttonSize, point.getY() - buttonSize, size, size, minX, minY, maxX, maxY)) {
+                gc.setFill(plugColour(index));
+                gc.fillOval(point.getX() - buttonSize, point.getY() - buttonSize, size, size);
+                gc.setFill(textCol);
+            }
+
+            final Point2D label = labelPoints[index];
+            if (intersects(label.getX() + labelLeft, label.getY() + labelTop, labelWidth, labelHeight, minX, minY, maxX, maxY)) {
+                final String letter = PairSelect.indexToLetter(index);
+                gc.strokeText(letter, label.getX(), label.getY());
+                gc.fillText(letter, label.getX(), label.getY());
+            }
+        }
+
+        gc.setStroke(lineCol);
+        gc.setLineWidth(lineWidth);
+        for (int first : pairList) {
+            final Point2D a = points[first];
+            final Point2D b = points[partner[first]];
+            gc.strokeLine(a.getX(), a.getY(), b.getX(), b.getY());
+        }
+
+        gc.restore();
+    }
+
+    private void repaintAll() {
+        repaint(0.0, 0.0, getWidth(), getHeight());
+    }
+
+    private void repaintPlug(int index) {
+        if (index == -1)
+            return;
+
+        final double extent = buttonSize + margin;
+        final Point2D point = points[index];
+        repaint(point.getX() - extent, point.getY() - extent,
+            point.getX() + extent, point.getY() + extent);
+    }
+
+    private void repaintLine(double x1, double y1, double x2, double y2, double width) {
+        final double extent = Math.max(buttonSize, width) + margin;
+        repaint(Math.min(x1, x2) - extent, Math.min(y1, y2) - extent,
+            Math.max(x1, x2) + extent, Math.max(y1, y2) + extent);
+    }
+
+    private void repaintLink(int a, int b) {
+        repaintLine(points[a].getX(), points[a].getY(), points[b].getX(), points[b].getY(), lineWidth);
+    }
+
+    private void repaintGuide() {
+        if (currentIndex == -1)
+            return;
+
+        final Point2D start = points[currentIndex];
+        repaintLine(start.getX(), start.getY(), guideX, guideY, guideWidth);
+    }
+
+
+    /************************************************************************
+     * Support code for the mouse handlers.
+     */
+
+    private void hover(int index) {
+        if (index == hoverIndex)
+            return;
+
+        final int previous = hoverIndex;
+        hoverIndex = index;
+        repaintPlug(previous);
+        repaintPlug(index);
+
+        if (index == -1) {
+            Tooltip.uninstall(this, tip);
+
+            return;
+        }
+
+        updateTip();
+        if (previous == -1)
+            Tooltip.install(this, tip);
+    }
+
+    private void updateTip() {
+        if (hoverIndex == -1)
+            return;
+
+        final String letter = PairSelect.indexToLetter(hoverIndex);
+        final int other = partner[hoverIndex];
+        tip.setText(other == -1 ? letter : letter + "-" + PairSelect.indexToLetter(other));
+    }
+
+    private void moveGuide(double x, double y) {
+        final Point2D start = points[currentIndex];
+        final double minX = Math.min(Math.min(guideX, x), start.getX());
+        final double minY = Math.min(Math.min(guideY, y), start.getY());
+        final double maxX = Math.max(Math.max(guideX, x), start.getX());
+        final double maxY = Math.max(Math.max(guideY, y), start.getY());
+
+        guideX = x;
+        guideY = y;
+        repaintLine(minX, minY, maxX, maxY, guideWidth);
+    }
+
+    private void dragWire(int index) {
+        if (isPairingDone())
+            return;
+
+        dragged = true;
+        currentIndex = index;
+        guideX = points[index].getX();
+        guideY = points[index].getY();
+        repaintPlug(index);
+    }
+
+    private void dropWire() {
+        dragged = false;
+        repaintGuide();
+        currentIndex = -1;
+    }
+
+    private void pairWire(int index) {
+        final int first = currentIndex;
+        dropWire();
+
+        connect(first, index);
+        repaintLink(first, index);
+        updateTip();
+
+        fireEvent(new PairEvent(PairEvent.LINK_CHANGE, first, index, true));
+    }
+
+    private void removeLink(int index) {
+        final int other = partner[index];
+        disconnect(index);
+        repaintLink(index, other);
+        if (dragged)
+            repaintGuide();
+        updateTip();
+
+        fireEvent(new PairEvent(PairEvent.LINK_CHANGE, index, other, false));
+    }
+
+    private void click(double x, double y) {
+        final int index = PairSelect.findPlug(plugboard, points, x, y, buttonSize);
+
+        if (index == -1) {
+            if (dragged)
+                dropWire();
+        } else
+        if (partner[index] != -1) {
+            removeLink(index);
+        } else
+        if (dragged) {
+            if (index == currentIndex)
+                dropWire();
+            else
+                pairWire(index);
+        } else {
+            dragWire(index);
+        }
+    }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    /**
+     * Determine if the reflector (or plugboard) is valid.
+     * @return true if the reflector is valid, false otherwise.
+     */
+    public boolean isValid() {
+        // Check we have only 1 unconfigured pair.
+        return isPlugboard() || (pairList.size() >= PairSelect.PAIR_COUNT);
+    }
+
+    /**
+     * Construct the Map represntation of the Pair set.
+     * @return the Map represntation.
+     */
+    public int[] getMap() {
+        int[] map = new int[PLUG_COUNT];
+
+        for (int i = 0; i < map.length; ++i)
+            map[i] = i;
+
+        if (!isValid())
+            return map;
+
+        for (int first : pairList) {
+            map[first] = partner[first];
+            map[partner[first]] = first;
+        }
+
+        if (isPlugboard())
+            return map;
+
+        // Set up reflector unconfigured pair, the only 2 unused letters.
+        final int first = Integer.numberOfTrailingZeros(unused);
+        final int second = 31 - Integer.numberOfLeadingZeros(unused);
+        map[first] = second;
+        map[second] = first;
+
+        return map;
+    }
+
+    /**
+     * Add a single pair, firing a LINK_CHANGE event for the pair.
+     * @param a index of the pair.
+     * @param b index of the pair.
+     * @return true if the pair was added, false if either index is in use
+     * or the reflector pairs or plugboard cables have all been used.
+     */
+    public boolean link(int a, int b) {
+        if ((a == b) || (partner[a] != -1) || (partner[b] != -1))
+            return false;
+
+        if (isPairingDone() || !isCableAvailable())
+            return false;
+
+        if (dragged && ((a == currentIndex) || (b == currentIndex)))
+            dropWire();
+
+        connect(a, b);
+        repaintLink(a, b);
+        updateTip();
+
+        fireEvent(new PairEvent(PairEvent.LINK_CHANGE, a, b, true));
+
+        return true;
+    }
+
+    /**
+     * Remove the pair containing an index, firing a LINK_CHANGE event for
+     * the pair.
+     * @param index of either end of the pair.
+     * @return true if the pair was removed, false if the index is not in use.
+     */
+    public boolean unlink(int index) {
+        if (partner[index] == -1)
+            return false;
+
+        removeLink(index);
+
+        return true;
+    }
+
+    /**
+     * Clear all pairs and any wire being dragged.
+     */
+    public void clear() {
+        reset();
+        repaintAll();
+    }
+
+    /**
+     * Construct a String represntation of the Pair set.
+     * @return the String represntation.
+     */
+    public String getPairString() {
+        Debug.trace(DD, "getPairString()");
+
+        StringBuilder to = new StringBuilder();
+        final int MAX = size();
+        for (int i = 0; i < MAX; ++i)
+            to.append(getText(i)).append(' ');
+
+        return to.toString();
+    }
+
+    /**
+     * Construct an ArrayList of Strings represntation of the Pair set.
+     * @return the ArrayList of Strings represntation.
+     */
+    public ArrayList<String> getLinks() {
+        Debug.trace(DD, "getLinks()");
+
+        ArrayList<String> to = new ArrayList<String>();
+        final int MAX = size();
+        for (int i = 0; i < MAX; ++i)
+            to.add(getText(i));
+
+        return to;
+    }
+
+    /**
+     * Initialise the pairs with the given ArrayList of Strings represntation,
+     * ignoring any pair that reuses a letter.
+     * @param links ArrayList of Strings.
+     */
+    public void setLinks(ArrayList<String> links) {
+        Debug.trace(DD, "setLinks()");
+        reset();
+
+        if (links != null) {
+            for (String pairString : links) {
+                if (pairString.length() != 2)
+                    continue;
+
+                final int index1 = PairSelect.charToIndex(pairString.charAt(0));
+                final int index2 = PairSelect.charToIndex(pairString.charAt(1));
+                if ((index1 == index2) || (partner[index1] != -1) || (partner[index2] != -1))
+                    continue;
+
+                if (isPairingDone() || !isCableAvailable())
+                    break;
+
+                connect(index1, index2);
+            }
+        }
+
+        repaintAll();
+    }
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param isPlugboard true for the plugboard layout, false for the 
+     * reflector layout.
+     */
+    public PairCanvas(boolean isPlugboard) {
+        super(PairSelect.getLayoutWidth(), PairSelect.getLayoutHeight(isPlugboard));
+
+        plugboard = isPlugboard;
+        points = PairSelect.buildPoints(isPlugboard);
+        labelPoints = PairSelect.buildLabelPoints(isPlugboard, points);
+        gc = getGraphicsContext2D();
+        reset();
+
+        setPickOnBounds(true);
+
+        setOnMouseClicked(event -> click(event.getX(), event.getY()));
+
+        setOnMouseMoved(event -> {
+            hover(PairSelect.findPlug(plugboard, points, event.getX(), event.getY(), buttonSize));
+
+            if (dragged)
+                moveGuide(event.getX(), event.getY());
+        });
+
+        setOnMouseExited(event -> hover(-1));
+
+        repaintAll();
+    }
+
+}
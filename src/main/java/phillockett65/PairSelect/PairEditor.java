@@ -0,0 +1,100 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * PairEditor is the interface shared by the editors of a set of letter pairs,
+ * so that PairSelectControl can use either the node based PairSelect or the
+ * Canvas based PairCanvas.
+ */
+package phillockett65.PairSelect;
+
+import java.util.ArrayList;
+
+interface PairEditor {
+
+    /**
+     * @return true if there are any pairs.
+     */
+    boolean hasPairs();
+
+    /**
+     * @return the number of pairs.
+     */
+    int size();
+
+    /**
+     * @param index of the pair.
+     * @return the pair as a 2 letter String, or an empty String.
+     */
+    String getText(int index);
+
+    /**
+     * Determine if the reflector (or plugboard) is valid.
+     * @return true if the reflector is valid, false otherwise.
+     */
+    boolean isValid();
+
+    /**
+     * Construct the Map represntation of the Pair set.
+     * @return the Map represntation.
+     */
+    int[] getMap();
+
+    /**
+     * Add a single pair, firing a LINK_CHANGE event for the pair.
+     * @param a index of the pair.
+     * @param b index of the pair.
+     * @return true if the pair was added, false if either index is in use
+     * or the reflector pairs or plugboard cables have all been used.
+     */
+    boolean link(int a, int b);
+
+    /**
+     * Remove the pair containing an index, firing a LINK_CHANGE event for
+     * the pair.
+     * @param index of either end of the pair.
+     * @return true if the pair was removed, false if the index is not in use.
+     */
+    boolean unlink(int index);
+
+    /**
+     * Clear all pairs.
+     */
+    void clear();
+
+    /**
+     * Construct a String represntation of the Pair set.
+     * @return the String represntation.
+     */
+    String getPairString();
+
+    /**
+     * Construct an ArrayList of Strings represntation of the Pair set.
+     * @return the ArrayList of Strings represntation.
+     */
+    ArrayList<String> getLinks();
+
+    /**
+     * Replace the pairs with the given ArrayList of Strings represntation.
+     * @param links ArrayList of Strings.
+     */
+    void setLinks(ArrayList<String> links);
+
+}
@@ -0,0 +1,57 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * PairEditors builds the node based PairEditor for the pop-up window. It is
+ * kept apart from PairSelectControl so that the node classes, and the
+ * JavaFX classes they extend, are only loaded when the window is first
+ * built. PairSelectControl only ever refers to the editor as a PairEditor
+ * and to its node as an Object, so the verifier does not need to load them.
+ */
+package phillockett65.PairSelect;
+
+import javafx.scene.Node;
+
+final class PairEditors {
+
+    private PairEditors() {
+    }
+
+    /**
+     * Build the editor selected by the CANVAS_PROPERTY system property.
+     * @param plugboard true for a plugboard, false for a reflector.
+     * @return the new editor, which is also a Node.
+     */
+    static PairEditor build(boolean plugboard) {
+        if (Boolean.getBoolean(PairSelectControl.CANVAS_PROPERTY))
+            return new PairCanvas(plugboard);
+
+        return new PairSelect(plugboard);
+    }
+
+    /**
+     * @param editor built by build().
+     * @return the editor as a Node, to add to the window.
+     */
+    static Node getNode(PairEditor editor) {
+        return (Node)editor;
+    }
+
+}
@@ -0,0 +1,223 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * PairLinks is a lightweight PairEditor that holds the pairs without any 
+ * nodes. PairSelectControl uses it until the pop-up window is first shown, 
+ * so that the window is only built if it is needed. Changes are passed to a 
+ * listener as PairEvents, in the same way as the node based editors fire 
+ * them.
+ */
+package phillockett65.PairSelect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import javafx.event.EventHandler;
+import phillockett65.PairSelect.PairSelect.PairEvent;
+
+class PairLinks implements PairEditor {
+
+    private static final int PLUG_COUNT = PairSelect.STEPS * 2;
+    private static final int ALL_PLUGS = (1 << PLUG_COUNT) - 1;
+
+    private final boolean plugboard;
+    private final EventHandler<PairEvent> listener;
+
+    // Lower letter of each pair in the order the pairs were made, and the
+    // other letter of the pair for every letter, or -1 if it is not used.
+    private final ArrayList<Integer> pairList = new ArrayList<Integer>();
+    private final int[] partner = new int[PLUG_COUNT];
+    private int unused = ALL_PLUGS;
+
+
+    /************************************************************************
+     * Support code for the state of the pairs.
+     */
+
+    // Local copies of the PairSelect helpers, so that the node classes are
+    // not loaded until the window is built.
+    private static int charToIndex(int v) { return Character.toUpperCase(v) - 'A'; }
+    static String indexToLetter(int v) { return "" + (char)(v + 'A'); }
+
+    public boolean isPlugboard() { return plugboard; }
+    public boolean isReflector() { return !isPlugboard(); }
+
+    public boolean hasPairs() { return !pairList.isEmpty(); }
+    public int size() { return pairList.size(); }
+
+    private boolean isPairingDone() {
+        return isReflector() && (pairList.size() >= PairSelect.PAIR_COUNT);
+    }
+
+    private boolean isCableAvailable() {
+        return isReflector() || (pairList.size() < PairSelect.WIRE_COUNT);
+    }
+
+    public String getText(int index) {
+        if (index >= size())
+            return "";
+
+        final int first = pairList.get(index);
+
+        return indexToLetter(first) + indexToLetter(partner[first]);
+    }
+
+    private void connect(int a, int b) {
+        partner[a] = b;
+        partner[b] = a;
+        pairList.add(Math.min(a, b));
+        unused &= ~((1 << a) | (1 << b));
+    }
+
+    private void reset() {
+        pairList.clear();
+        Arrays.fill(partner, -1);
+        unused = ALL_PLUGS;
+    }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    public boolean isValid() {
+        // Check we have only 1 unconfigured pair.
+        return isPlugboard() || (pairList.size() >= PairSelect.PAIR_COUNT);
+    }
+
+    public int[] getMap() {
+        int[] map = new int[PLUG_COUNT];
+
+        for (int i = 0; i < map.length; ++i)
+            map[i] = i;
+
+        if (!isValid())
+            return map;
+
+        for (int first : pairList) {
+            map[first] = partner[first];
+            map[partner[first]] = first;
+        }
+
+        if (isPlugboard())
+            return map;
+
+        // Set up reflector unconfigured pair, the only 2 unused letters.
+        final int first = Integer.numberOfTrailingZeros(unused);
+        final int second = 31 - Integer.numberOfLeadingZeros(unused);
+        map[first] = second;
+        map[second] = first;
+
+        return map;
+    }
+
+    public boolean link(int a, int b) {
+        if ((a == b) || (partner[a] != -1) || (partner[b] != -1))
+            return false;
+
+        if (isPairingDone() || !isCableAvailable())
+            return false;
+
+        connect(a, b);
+        listener.handle(new PairEvent(PairEvent.LINK_CHANGE, a, b, true));
+
+        return true;
+    }
+
+    public boolean unlink(int index) {
+        final int other = partner[index];
+        if (other == -1)
+            return false;
+
+        partner[index] = -1;
+        partner[other] = -1;
+        pairList.remove(Integer.valueOf(Math.min(index, other)));
+        unused |= (1 << index) | (1 << other);
+        listener.handle(new PairEvent(PairEvent.LINK_CHANGE, index, other, false));
+
+        return true;
+    }
+
+    public void clear() {
+        reset();
+    }
+
+    public String getPairString() {
+        StringBuilder to = new StringBuilder();
+        final int MAX = size();
+        for (int i = 0; i < MAX; ++i)
+            to.append(getText(i)).append(' ');
+
+        return to.toString();
+    }
+
+    public ArrayList<String> getLinks() {
+        ArrayList<String> to = new ArrayList<String>();
+        final int MAX = size();
+        for (int i = 0; i < MAX; ++i)
+            to.add(getText(i));
+
+        return to;
+    }
+
+    /**
+     * Initialise the pairs with the given ArrayList of Strings represntation,
+     * ignoring any pair that reuses a letter and any beyond the limit.
+     * @param links ArrayList of Strings.
+     */
+    public void setLinks(ArrayList<String> links) {
+        reset();
+        if (links == null)
+            return;
+
+        for (String pairString : links) {
+            if (pairString.length() != 2)
+                continue;
+
+            final int index1 = charToIndex(pairString.charAt(0));
+            final int index2 = charToIndex(pairString.charAt(1));
+            if ((index1 == index2) || (partner[index1] != -1) || (partner[index2] != -1))
+                continue;
+
+            if (isPairingDone() || !isCableAvailable())
+                break;
+
+            connect(index1, index2);
+        }
+    }
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param isPlugboard true for a plugboard, false for a reflector.
+     * @param listener to pass single pair changes to.
+     */
+    PairLinks(boolean isPlugboard, EventHandler<PairEvent> listener) {
+        plugboard = isPlugboard;
+        this.listener = listener;
+        reset();
+    }
+
+}
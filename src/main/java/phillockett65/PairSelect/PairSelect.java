@@ -40,13 +40,13 @@ import javafx.scene.text.Text;
 import phillockett65.Debug.Debug;
 
 
-public class PairSelect extends AnchorPane {
+public class PairSelect extends AnchorPane implements PairEditor {
 
     // Debug delta used to adjust the local logging level.
     private static final int DD = 0;
 
-    private static final int PAIR_COUNT = 12;
-    private static final int WIRE_COUNT = 10;
+    static final int PAIR_COUNT = 12;
+    static final int WIRE_COUNT = 10;
 
     private boolean onHandle = false;
     private boolean dragged = false;
@@ -87,17 +87,24 @@ public class PairSelect extends AnchorPane {
         }
     }
 
-    public double getMyWidth() { return xCentre * 2; }
-    public double getMyHeight() { 
-        return isPlugboard() ? (rowStep * 3) : (yCentre * 2) + rowIndent; 
+    static double getLayoutWidth() { return xCentre * 2; }
+    static double getLayoutHeight(boolean isPlugboard) { 
+        return isPlugboard ? (rowStep * 3) : (yCentre * 2) + rowIndent; 
     }
 
+    public double getMyWidth() { return getLayoutWidth(); }
+    public double getMyHeight() { return getLayoutHeight(isPlugboard()); }
+
     public static final int STEPS = 13;
     public static final double pi = Math.acos(-1);
     public static final double STEP = (pi / STEPS);
 
     private ArrayList<Connect> pairList;
 
+    // Bit set of the plugs not in a pair.
+    private static final int ALL_PLUGS = (1 << (STEPS*2)) - 1;
+    private int unused = ALL_PLUGS;
+
     private ArrayList<Plug> buttons;
     private ArrayList<Text> labels;
     private Point2D[] points;
@@ -182,11 +189,12 @@ public class PairSelect extends AnchorPane {
         this.getChildren().add(line);
 
         guide.setVisible(false);
+        unused &= ~((1 << currentIndex) | (1 << index));
 
-        button.fireEvent(new PairEvent(PairEvent.LINK_CHANGE));
+        button.fireEvent(new PairEvent(PairEvent.LINK_CHANGE, currentIndex, index, true));
     }
 
-    private void removeLink(Plug button, int index) {
+    private boolean removeLink(Plug button, int index, boolean hovering) {
 
         for (Connect pair : pairList)
         {
@@ -198,78 +206,129 @@ public class PairSelect extends AnchorPane {
 
             Plug otherButton = buttons.get(otherIndex);
             otherButton.stateChange(false, false);
-            button.stateChange(false, true);
+            button.stateChange(false, hovering);
 
             pair.resetTips();
             this.getChildren().remove(pair.getLine());
             pairList.remove(pair);
+            unused |= (1 << index) | (1 << otherIndex);
 
             setLineColours();
-            button.fireEvent(new PairEvent(PairEvent.LINK_CHANGE));
+            button.fireEvent(new PairEvent(PairEvent.LINK_CHANGE, index, otherIndex, false));
 
-            break;
+            return true;
         }
+
+        return false;
     }
 
 
-    private void loadPlugboard() {
-        final String[] plugOrder = { "QWERTZUIO", "ASDFGHJK", "PYXCVBNML" };
-        points = new Point2D[26];
+    private static final String[] plugOrder = { "QWERTZUIO", "ASDFGHJK", "PYXCVBNML" };
 
-        int row = 0;
-        for (String plug : plugOrder) {
-            final int max = plug.length();
-            for (int col = 0; col < max; ++col) {
-                int index = charToIndex(plug.charAt(col));
-                double x = colIndent + (col * colStep) + ((row % 2) * (colStep / 2));
-                double y = rowIndent + (row * rowStep);
-                points[index] = new Point2D(x, y);
+    /**
+     * Calculate the centre point of each plug, in the layout of a plugboard
+     * or around the circle of a reflector.
+     * @param isPlugboard true for the plugboard layout.
+     * @return the centre points indexed by letter.
+     */
+    static Point2D[] buildPoints(boolean isPlugboard) {
+        Point2D[] output = new Point2D[STEPS*2];
+
+        if (isPlugboard) {
+            int row = 0;
+            for (String plug : plugOrder) {
+                final int max = plug.length();
+                for (int col = 0; col < max; ++col) {
+                    int index = charToIndex(plug.charAt(col));
+                    double x = colIndent + (col * colStep) + ((row % 2) * (colStep / 2));
+                    double y = rowIndent + (row * rowStep);
+                    output[index] = new Point2D(x, y);
+                }
+                ++row;
+            }
+        } else {
+            for (int index = 0; index < output.length; ++index) {
+                final double theta = STEP * index;
+                final double x = (radius * Math.sin(theta)) + xCentre;
+                final double y = (radius * Math.cos(theta)) + yCentre;
+                output[index] = new Point2D(x, y);
             }
-            ++row;
         }
+
+        return output;
     }
 
-    private void positionReflectorButton(int index) {
-        final double theta = STEP * index;
-        final double s = Math.sin(theta);
-        final double c = Math.cos(theta);
-
-        final double x = (radius * s) + xCentre;
-        final double y = (radius * c) + yCentre;
-        Plug button = buttons.get(index);
-        button.setCenterX(x);
-        button.setCenterY(y);
-
-        final double a = (labelRadius * s) + xCentre - 4;
-        final double b = (labelRadius * c) + yCentre + 5;
-        Text text = labels.get(index);
-        text.setX(a);
-        text.setY(b);
+    /**
+     * Calculate the base line position of the label of each plug.
+     * @param isPlugboard true for the plugboard layout.
+     * @param points centre points from buildPoints().
+     * @return the label positions indexed by letter.
+     */
+    static Point2D[] buildLabelPoints(boolean isPlugboard, Point2D[] points) {
+        Point2D[] output = new Point2D[points.length];
+
+        for (int index = 0; index < output.length; ++index) {
+            if (isPlugboard) {
+                output[index] = new Point2D(points[index].getX() - 4, points[index].getY() - 20);
+            } else {
+                final double theta = STEP * index;
+                final double a = (labelRadius * Math.sin(theta)) + xCentre - 4;
+                final double b = (labelRadius * Math.cos(theta)) + yCentre + 5;
+                output[index] = new Point2D(a, b);
+            }
+        }
+
+        return output;
     }
 
-    private void positionPlugboardButton(int index) {
-        Point2D point = points[index];
-        final double x = point.getX();
-        final double y = point.getY();
+    /**
+     * Find the plug at a point without searching, by working back from the
+     * layout used by buildPoints().
+     * @param isPlugboard true for the plugboard layout.
+     * @param points centre points from buildPoints().
+     * @param x co-ordinate.
+     * @param y co-ordinate.
+     * @param size radius of a plug.
+     * @return the index of the plug, or -1 if there is no plug at the point.
+     */
+    static int findPlug(boolean isPlugboard, Point2D[] points, double x, double y, double size) {
+        int index;
+
+        if (isPlugboard) {
+            final int row = (int)Math.round((y - rowIndent) / rowStep);
+            if ((row < 0) || (row >= plugOrder.length))
+                return -1;
 
-        Plug button = buttons.get(index);
-        button.setCentre(x, y);
+            final int col = (int)Math.round((x - colIndent - ((row % 2) * (colStep / 2))) / colStep);
+            if ((col < 0) || (col >= plugOrder[row].length()))
+                return -1;
 
-        Text text = labels.get(index);
-        text.setX(x-4);
-        text.setY(y-20);
+            index = charToIndex(plugOrder[row].charAt(col));
+        } else {
+            double theta = Math.atan2(x - xCentre, y - yCentre);
+            if (theta < 0)
+                theta += 2 * pi;
+
+            index = (int)Math.round(theta / STEP) % (STEPS*2);
+        }
+
+        if (points[index].distance(x, y) > size)
+            return -1;
+
+        return index;
     }
 
     private void positionButtons() {
-        if (isPlugboard()) {
-            loadPlugboard();
-            for (int index = 0; index < (STEPS*2); ++index) {
-                positionPlugboardButton(index);
-            }
-        } else {
-            for (int index = 0; index < (STEPS*2); ++index) {
-                positionReflectorButton(index);
-            }
+        points = buildPoints(isPlugboard());
+        Point2D[] labelPoints = buildLabelPoints(isPlugboard(), points);
+
+        for (int index = 0; index < (STEPS*2); ++index) {
+            Plug button = buttons.get(index);
+            button.setCentre(points[index].getX(), points[index].getY());
+
+            Text text = labels.get(index);
+            text.setX(labelPoints[index].getX());
+            text.setY(labelPoints[index].getY());
         }
     }
 
@@ -288,7 +347,7 @@ public class PairSelect extends AnchorPane {
 
         button.setOnMouseClicked(event -> {
             if (buttons.get(index).isUsed()) {
-                removeLink(button, index);
+                removeLink(button, index, true);
             } else {
                 if (dragged == true)
                     pairWire(button, index);
@@ -359,21 +418,11 @@ public class PairSelect extends AnchorPane {
         if (isPlugboard())
             return map;
 
-        // Set up reflector unconfigured pair.
-        int first = -1;
-        for (int index = 0; index < buttons.size(); ++index) {
-            if (buttons.get(index).isUsed())
-                continue;
-
-            if (first == -1) {
-                first = index;
-            } else {
-                map[first] = index;
-                map[index] = first;
-
-                break;
-            }
-        }
+        // Set up reflector unconfigured pair, the only 2 unused plugs.
+        final int first = Integer.numberOfTrailingZeros(unused);
+        final int second = 31 - Integer.numberOfLeadingZeros(unused);
+        map[first] = second;
+        map[second] = first;
 
         return map;
     }
@@ -391,6 +440,7 @@ public class PairSelect extends AnchorPane {
         for (Plug button : buttons) {
             button.stateChange(false, false);
         }
+        unused = ALL_PLUGS;
     }
 
     private void init() {
@@ -469,6 +519,7 @@ public class PairSelect extends AnchorPane {
         Plug button2 = buttons.get(index2);
         button1.stateChange(true, false);
         button2.stateChange(true, false);
+        unused &= ~((1 << index1) | (1 << index2));
         Connect pair = new Connect(button1, button2);
 
         pairList.add(pair);
@@ -480,6 +531,45 @@ public class PairSelect extends AnchorPane {
         return pair;
     }
 
+    private boolean isLinked(int index) { return (unused & (1 << index)) == 0; }
+
+    /**
+     * Add a single pair, firing a LINK_CHANGE event for the pair.
+     * @param index1 index of the pair.
+     * @param index2 index of the pair.
+     * @return true if the pair was added, false if either index is in use
+     * or the reflector pairs or plugboard cables have all been used.
+     */
+    public boolean link(int index1, int index2) {
+        if ((index1 == index2) || isLinked(index1) || isLinked(index2))
+            return false;
+
+        if (isPairingDone() || !isCableAvailable())
+            return false;
+
+        if (dragged && ((index1 == currentIndex) || (index2 == currentIndex)))
+            dropWire(buttons.get(currentIndex), currentIndex);
+
+        addLink(index1, index2);
+        setLineColours();
+        this.fireEvent(new PairEvent(PairEvent.LINK_CHANGE, index1, index2, true));
+
+        return true;
+    }
+
+    /**
+     * Remove the pair containing an index, firing a LINK_CHANGE event for
+     * the pair.
+     * @param index of either end of the pair.
+     * @return true if the pair was removed, false if the index is not in use.
+     */
+    public boolean unlink(int index) {
+        if (!isLinked(index))
+            return false;
+
+        return removeLink(buttons.get(index), index, false);
+    }
+
     /**
      * Initialise pairList with the given ArrayList of Strings represntation.
      * @param links ArrayList of Strings.
@@ -494,6 +584,9 @@ public class PairSelect extends AnchorPane {
             if (pairString.length() != 2)
                 continue;
 
+            if (isPairingDone() || !isCableAvailable())
+                break;
+
             int index1 = charToIndex(pairString.charAt(0));
             int index2 = charToIndex(pairString.charAt(1));
 
@@ -528,22 +621,53 @@ public class PairSelect extends AnchorPane {
     
         public static final EventType<PairEvent> LINK_CHANGE =
             new EventType<>(PairEvent.ANY, "LINK_CHANGE");
+
+        private final int first;
+        private final int second;
+        private final boolean linked;
     
         /**
          * Creates a new {@code PairEvent} with an event type of {@code ANY}.
          * The source and target of the event are set to {@code NULL_SOURCE_TARGET}.
          */
-        public PairEvent() { super(ANY); }
+        public PairEvent() { this(ANY); }
     
         /**
-         * Construct a new {@code PairEvent} with the specified event type.
+         * Construct a new {@code PairEvent} with the specified event type,
+         * for a change to any number of pairs.
          * The source and target of the event are set to {@code NULL_SOURCE_TARGET}.
          *
          * @param eventType this event represents.
          */
         public PairEvent(EventType<? extends Event> eventType) {
+            this(eventType, -1, -1, false);
+        }
+
+        /**
+         * Construct a new {@code PairEvent} with the specified event type,
+         * for the addition or removal of a single pair.
+         * The source and target of the event are set to {@code NULL_SOURCE_TARGET}.
+         *
+         * @param eventType this event represents.
+         * @param first index of the pair.
+         * @param second index of the pair.
+         * @param linked true if the pair was added, false if removed.
+         */
+        public PairEvent(EventType<? extends Event> eventType, int first, int second, boolean linked) {
             super(eventType);
+            this.first = first;
+            this.second = second;
+            this.linked = linked;
         }
+
+        /**
+         * @return true if a single pair was changed, false if any number of
+         * pairs may have changed.
+         */
+        public boolean isSinglePair() { return first != -1; }
+        public int getFirst() { return first; }
+        public int getSecond() { return second; }
+        public boolean isLinked() { return linked; }
     
     
         @Override
@@ -20,12 +20,14 @@
 
 /*
  * Pop-up window that contains control buttons for the cancel, done and clear 
- * buttons and the PairSelect object.
+ * buttons and the PairSelect object. The window is only built when it is 
+ * first shown, until then the pairs are held in a lightweight PairLinks.
  */
 package phillockett65.PairSelect;
 
 import java.util.ArrayList;
 
+import javafx.event.EventHandler;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
@@ -43,21 +45,29 @@ import javafx.scene.shape.StrokeLineCap;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
+import phillockett65.Debug.Debug;
 import phillockett65.PairSelect.PairSelect.PairEvent;
 
 /**
  *
  * @author Phil
  */
-public class PairSelectControl extends Stage {
+public class PairSelectControl {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
 
     private static final String TOPBARICON = "top-bar-icon";
 
+    // Set this system property to true to draw the pairs on a Canvas.
+    public static final String CANVAS_PROPERTY = "enigma.pairselect.canvas";
+
+    private Stage stage = null;
     private Scene scene;
 
     private VBox root;
     private Label heading;
-    private PairSelect pairSelect;
+    private PairEditor pairSelect;
     private TextField field;
 
     private Button done;
@@ -66,9 +76,14 @@ public class PairSelectControl extends Stage {
     private double x = 0.0;
     private double y = 0.0;
 
-    private boolean plugboard = false;
+    private final boolean plugboard;
+    private String title;
     private boolean result = false;
     private boolean positioned = false;
+    private double xPos;
+    private double yPos;
+
+    private final ArrayList<EventHandler<PairEvent>> handlers = new ArrayList<EventHandler<PairEvent>>();
 
     private static final double ERRPOS = -200.0;
 
@@ -83,11 +98,21 @@ public class PairSelectControl extends Stage {
         }
 
         positioned = true;
-        this.setX(x);
-        this.setY(y);
+        xPos = x;
+        yPos = y;
+        if (stage != null) {
+            stage.setX(x);
+            stage.setY(y);
+        }
+    }
+    public double getXPos() {
+        if (!positioned) return ERRPOS;
+        return (stage != null) ? stage.getX() : xPos;
+    }
+    public double getYPos() {
+        if (!positioned) return ERRPOS;
+        return (stage != null) ? stage.getY() : yPos;
     }
-    public double getXPos() { if (positioned) return this.getX(); return ERRPOS; }
-    public double getYPos() { if (positioned) return this.getY(); return ERRPOS; }
 
     private void syncDoneButton() {
         boolean disabled = !plugboard;
@@ -102,6 +127,9 @@ public class PairSelectControl extends Stage {
     }
 
     private void syncUI() {
+        if (stage == null)
+            return;
+
         syncDoneButton();
         syncPairs();
     }
@@ -137,7 +165,7 @@ public class PairSelectControl extends Stage {
         cancel.setOnMouseClicked(event -> {
             restoreSnapshot();
             result = false;
-            close();
+            stage.close();
         });
 
         return cancel;
@@ -159,11 +187,11 @@ public class PairSelectControl extends Stage {
         });
 
         topBar.setOnMouseDragged(mouseEvent -> {
-            this.setX(mouseEvent.getScreenX() - x);
-            this.setY(mouseEvent.getScreenY() - y);
+            stage.setX(mouseEvent.getScreenX() - x);
+            stage.setY(mouseEvent.getScreenY() - y);
         });
 
-        heading = new Label();
+        heading = new Label(" " + title);
         Region region = new Region();
 
 
@@ -190,7 +218,7 @@ public class PairSelectControl extends Stage {
     
         done.setOnAction(event -> {
             result = true;
-            close();
+            stage.close();
         });
 
         clear.setOnAction(event -> {
@@ -227,7 +255,8 @@ public class PairSelectControl extends Stage {
     }
 
     /**
-     * Builds the User controls as a VBox.
+     * Builds the User controls as a VBox and moves the pairs from the 
+     * PairLinks to the editor.
      * @return the VBox that captures the User controls.
      */
     private VBox buildControlPanel() {
@@ -236,19 +265,26 @@ public class PairSelectControl extends Stage {
         panel.setSpacing(10);
         panel.setPadding(new Insets(10.0));
 
-        pairSelect = new PairSelect(plugboard);
+        // Built by PairEditors, so that the node classes are not loaded with
+        // this class.
+        PairEditor editor = PairEditors.build(plugboard);
+        editor.setLinks(pairSelect.getLinks());
+        pairSelect = editor;
 
-        panel.getChildren().add(pairSelect);
+        panel.getChildren().add(PairEditors.getNode(editor));
         panel.getChildren().add(buildSelected());
         panel.getChildren().add(buildOptions());
 
         return panel;
     }
 
-    private void init() {
-        this.resizableProperty().setValue(false);
-        this.initStyle(StageStyle.UNDECORATED);
-        this.initModality(Modality.APPLICATION_MODAL);
+    private void buildStage() {
+        final long start = System.nanoTime();
+
+        stage = new Stage();
+        stage.resizableProperty().setValue(false);
+        stage.initStyle(StageStyle.UNDECORATED);
+        stage.initModality(Modality.APPLICATION_MODAL);
 
         root = new VBox();
 
@@ -260,11 +296,33 @@ public class PairSelectControl extends Stage {
         scene = new Scene(root);
         scene.getStylesheets().add(getClass().getResource("PairSelect.css").toExternalForm());
 
-        this.setScene(scene);
+        stage.setScene(scene);
+
+        if (positioned) {
+            stage.setX(xPos);
+            stage.setY(yPos);
+        }
+
+        Debug.info(DD, () -> "Built " + title + " window in " + (System.nanoTime() - start) / 1000000 + "ms");
     }
 
     public void handleSelectEvent(PairEvent event) {
         syncUI();
+        notifyHandlers(event);
+    }
+
+    private void notifyHandlers(PairEvent event) {
+        for (EventHandler<PairEvent> handler : handlers)
+            handler.handle(event);
+    }
+
+    /**
+     * Add a handler for the PairEvent.LINK_CHANGE events of either the 
+     * PairLinks or the editor, whichever is in use.
+     * @param handler to add.
+     */
+    public void addLinkChangeHandler(EventHandler<PairEvent> handler) {
+        handlers.add(handler);
     }
 
     public ArrayList<String> getLinks() { return pairSelect.getLinks(); }
@@ -273,9 +331,39 @@ public class PairSelectControl extends Stage {
     public boolean hasLinks() { return pairSelect.hasPairs(); }
     public int[] getMap() { return pairSelect.getMap(); }
     public boolean isValid() { return pairSelect.isValid(); }
-    public void clear() { pairSelect.clear(); }
-    public void setLinks(ArrayList<String> links) { pairSelect.setLinks(links); }
-    public void setHeading(String title) { heading.setText(" " + title); }
+    public void setHeading(String title) {
+        this.title = title;
+        if (heading != null)
+            heading.setText(" " + title);
+    }
+
+    public boolean link(int a, int b) { return pairSelect.link(a, b); }
+    public boolean unlink(int index) { return pairSelect.unlink(index); }
+
+    private void fireChange() {
+        PairEvent event = new PairEvent(PairEvent.LINK_CHANGE);
+        if (stage == null)
+            notifyHandlers(event);
+        else
+            root.fireEvent(event);
+    }
+
+    /**
+     * Clear all pairs, firing a LINK_CHANGE event for any number of pairs.
+     */
+    public void clear() {
+        pairSelect.clear();
+        fireChange();
+    }
+
+    /**
+     * Replace all pairs, firing a LINK_CHANGE event for any number of pairs.
+     * @param links ArrayList of 2 letter Strings.
+     */
+    public void setLinks(ArrayList<String> links) {
+        pairSelect.setLinks(links);
+        fireChange();
+    }
 
     /**
      * Fabricate default pair values.
@@ -284,7 +372,7 @@ public class PairSelectControl extends Stage {
         ArrayList<String> links = new ArrayList<String>();
         for (int i = 0; i  < 12; ++i) {
             final int a = i * 2;
-            String pair = PairSelect.indexToLetter(a) + PairSelect.indexToLetter(a+1);
+            String pair = PairLinks.indexToLetter(a) + PairLinks.indexToLetter(a+1);
             links.add(pair);
         }
         setLinks(links);
@@ -306,26 +394,29 @@ public class PairSelectControl extends Stage {
     }
 
     /**
-     * Constructor.
+     * Constructor. Only the PairLinks is built, the window is built when it 
+     * is first shown.
      */
     public PairSelectControl(boolean isPlugboard, String title) {
-        super();
         plugboard = isPlugboard;
-        init();
-
-        setHeading(title);
+        this.title = title;
+        pairSelect = new PairLinks(plugboard, this::notifyHandlers);
     }
 
 
     /**
-     * Launch the Pair Select Control and wait for user input.
+     * Launch the Pair Select Control and wait for user input, building the 
+     * window the first time.
      * @return true if the control was updated, false if cancelled.
      */
     public boolean showControl() {
+        if (stage == null)
+            buildStage();
+
         positioned = true;
         takeSnapshot();
         syncUI();
-        this.showAndWait();
+        stage.showAndWait();
 
         return result;
     }
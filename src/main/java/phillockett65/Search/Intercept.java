@@ -0,0 +1,158 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Intercept is a class that captures a single enciphered message together
+ * with the scrambler table for its message key. As the scrambler table
+ * excludes the plugboard, a candidate plugboard can be applied to decipher
+ * the message without stepping any rotors.
+ */
+package phillockett65.Search;
+
+import java.util.Arrays;
+
+import phillockett65.Enigma.Engine;
+import phillockett65.Enigma.Mapper;
+
+public class Intercept {
+
+    private final int[] cipher;
+    private final int[] offsets;
+    private final int[] scrambler;
+    private final int[] plain;
+
+
+    /************************************************************************
+     * General support code.
+     */
+
+    /**
+     * Convert a String to indices (0..25), ignoring anything that is not a
+     * letter.
+     * @param text to convert.
+     * @return array of indices.
+     */
+    public static int[] toIndices(String text) {
+        int[] output = new int[text.length()];
+        int length = 0;
+
+        for (int i = 0; i < text.length(); ++i) {
+            final char c = text.charAt(i);
+            if (Character.isLetter(c)) {
+                final int index = Mapper.charToIndex(c);
+                if ((index >= 0) && (index < 26))
+                    output[length++] = index;
+            }
+        }
+
+        return Arrays.copyOf(output, length);
+    }
+
+    /**
+     * Convert indices (0..25) to a String.
+     * @param indices to convert.
+     * @param length number of indices to convert.
+     * @return the letters.
+     */
+    public static String toText(int[] indices, int length) {
+        StringBuilder output = new StringBuilder(length);
+        for (int i = 0; i < length; ++i)
+            output.append((char)Mapper.indexToChar(indices[i]));
+
+        return output.toString();
+    }
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor. The engine offsets are restored before returning.
+     * @param engine configured with the (hypothesised) wheel order and rings.
+     * @param offsets message key, i.e. the start position of each rotor.
+     * @param text enciphered message.
+     */
+    public Intercept(Engine engine, int[] offsets, String text) {
+        this(engine, offsets, toIndices(text));
+    }
+
+    /**
+     * Constructor. The engine offsets are restored before returning.
+     * @param engine configured with the (hypothesised) wheel order and rings.
+     * @param offsets message key, i.e. the start position of each rotor.
+     * @param indices enciphered message as indices (0..25).
+     */
+    public Intercept(Engine engine, int[] offsets, int[] indices) {
+        cipher = indices;
+        this.offsets = offsets.clone();
+        plain = new int[cipher.length];
+
+        final int[] saved = engine.getOffsets();
+        engine.setOffsets(offsets);
+        scrambler = engine.buildScramblerTable(cipher.length);
+        engine.setOffsets(saved);
+    }
+
+
+    /************************************************************************
+     * Getters support code.
+     */
+
+    public int length() { return cipher.length; }
+    public int[] getCipher() { return cipher; }
+    public int[] getOffsets() { return offsets.clone(); }
+    public int[] getScrambler() { return scrambler; }
+
+    /**
+     * Get the plain text produced by the last call to decipher().
+     * @return the plain text indices. This buffer is reused.
+     */
+    public int[] getPlain() { return plain; }
+
+
+    /************************************************************************
+     * Deciphering support code.
+     */
+
+    /**
+     * Decipher the message using the given plugboard. The result is written
+     * to the reusable plain text buffer.
+     * @param plugboard map to apply on the way in and out of the scrambler.
+     * @return the plain text indices.
+     */
+    public int[] decipher(int[] plugboard) {
+        for (int i = 0; i < cipher.length; ++i)
+            plain[i] = plugboard[scrambler[i * 26 + plugboard[cipher[i]]]];
+
+        return plain;
+    }
+
+    /**
+     * Decipher the message using the given plugboard and score the result.
+     * @param table n-gram table used for scoring.
+     * @param plugboard map to apply.
+     * @return the n-gram score of the plain text.
+     */
+    public double score(NGramTable table, int[] plugboard) {
+        return table.score(decipher(plugboard), cipher.length);
+    }
+
+}
@@ -0,0 +1,116 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * JointScorer is a class that scores a candidate plugboard against all the
+ * messages sent on one key list day. The messages share the wheel order,
+ * ring settings and plugboard and differ only in the message key, so the
+ * combined n-gram score uses all the available statistics. Each message is
+ * scored in parallel and the scores are summed.
+ */
+package phillockett65.Search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import phillockett65.Enigma.Engine;
+
+public class JointScorer {
+
+    // Below this many letters in total, parallel scoring costs more than it saves.
+    private static final int PARALLEL_THRESHOLD = 2000;
+
+    private final NGramTable table;
+    private final ArrayList<Intercept> intercepts = new ArrayList<Intercept>();
+    private int letters = 0;
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param table n-gram table used for scoring.
+     */
+    public JointScorer(NGramTable table) {
+        this.table = table;
+    }
+
+    /**
+     * Add an already prepared message.
+     * @param intercept to add.
+     */
+    public void add(Intercept intercept) {
+        intercepts.add(intercept);
+        letters += intercept.length();
+    }
+
+    /**
+     * Add a message sent using the day key configured in the engine.
+     * @param engine configured with the day key.
+     * @param offsets message key of this message.
+     * @param text enciphered message.
+     */
+    public void add(Engine engine, int[] offsets, String text) {
+        add(new Intercept(engine, offsets, text));
+    }
+
+
+    /************************************************************************
+     * Getters support code.
+     */
+
+    public NGramTable getTable() { return table; }
+    public List<Intercept> getIntercepts() { return intercepts; }
+    public int size() { return intercepts.size(); }
+    public int getLetterCount() { return letters; }
+
+
+    /************************************************************************
+     * Scoring support code.
+     */
+
+    /**
+     * Score the candidate plugboard jointly across all messages. Each
+     * Intercept owns its deciphering buffer, so the messages can be scored
+     * concurrently, but this method must not be called concurrently.
+     * @param plugboard candidate map.
+     * @return the combined n-gram score.
+     */
+    public double score(int[] plugboard) {
+        final int count = intercepts.size();
+
+        if ((count < 2) || (letters < PARALLEL_THRESHOLD)) {
+            double output = 0;
+            for (Intercept intercept : intercepts)
+                output += intercept.score(table, plugboard);
+
+            return output;
+        }
+
+        return IntStream.range(0, count)
+            .parallel()
+            .mapToDouble(i -> intercepts.get(i).score(table, plugboard))
+            .sum();
+    }
+
+}
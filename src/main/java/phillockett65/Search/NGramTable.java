@@ -0,0 +1,177 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * NGramTable is a class that holds the log-probability of every n-gram of a
+ * given order over the 26 letter alphabet (indices 0..25 as used by Mapper).
+ * The n-gram A..Z is stored at the base 26 value of its letter indices.
+ */
+package phillockett65.Search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+public class NGramTable {
+
+    public static final int MAGIC = 0x454E4752;     // "ENGR"
+    public static final int VERSION = 1;
+
+    private final int order;
+    private final int size;
+    private final float[] scores;
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Calculate the number of n-grams of the given order.
+     * @param order of the n-grams (1..5).
+     * @return 26 to the power of order.
+     */
+    public static int tableSize(int order) {
+        int output = 1;
+        for (int i = 0; i < order; ++i)
+            output *= 26;
+
+        return output;
+    }
+
+    /**
+     * Constructor.
+     * @param order of the n-grams (1..5).
+     * @param scores log-probability of each n-gram.
+     */
+    public NGramTable(int order, float[] scores) {
+        if ((order < 1) || (order > 5))
+            throw new IllegalArgumentException("Unsupported n-gram order: " + order);
+
+        this.order = order;
+        size = tableSize(order);
+        if (scores.length != size)
+            throw new IllegalArgumentException("Expected " + size + " scores, got " + scores.length);
+
+        this.scores = scores;
+    }
+
+    /**
+     * Read an NGramTable from disc.
+     * @param path of the binary table file.
+     * @return the NGramTable.
+     * @throws IOException if the file cannot be read or is not a table.
+     */
+    public static NGramTable load(String path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException(path + " is not an n-gram table");
+
+            final int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException(path + " has unsupported version " + version);
+
+            final int order = in.readInt();
+            float[] scores = new float[tableSize(order)];
+            for (int i = 0; i < scores.length; ++i)
+                scores[i] = in.readFloat();
+
+            return new NGramTable(order, scores);
+        }
+    }
+
+    /**
+     * Write this NGramTable to disc in the format read by load().
+     * @param path of the binary table file.
+     * @throws IOException if the file cannot be written.
+     */
+    public void write(String path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(order);
+            for (float score : scores)
+                out.writeFloat(score);
+        }
+    }
+
+    /**
+     * Build an NGramTable of log-probabilities from n-gram counts. Unseen
+     * n-grams are given a floor probability of a tenth of a single sighting.
+     * @param order of the n-grams (1..5).
+     * @param counts number of sightings of each n-gram.
+     * @return the NGramTable.
+     */
+    public static NGramTable fromCounts(int order, long[] counts) {
+        long total = 0;
+        for (long count : counts)
+            total += count;
+
+        final double denominator = Math.max(total, 1);
+        final float floor = (float)Math.log(0.1 / denominator);
+
+        float[] scores = new float[counts.length];
+        for (int i = 0; i < counts.length; ++i)
+            scores[i] = counts[i] == 0 ? floor : (float)Math.log(counts[i] / denominator);
+
+        return new NGramTable(order, scores);
+    }
+
+
+    /************************************************************************
+     * Getters support code.
+     */
+
+    public int getOrder() { return order; }
+    public float getScore(int ngram) { return scores[ngram]; }
+
+
+    /************************************************************************
+     * Scoring support code.
+     */
+
+    /**
+     * Sum the log-probabilities of every n-gram in the text.
+     * @param text indices (0..25) to score.
+     * @param length number of indices to score.
+     * @return the score, higher is more plain text like.
+     */
+    public double score(int[] text, int length) {
+        if (length < order)
+            return 0;
+
+        int ngram = 0;
+        for (int i = 0; i < order - 1; ++i)
+            ngram = ngram * 26 + text[i];
+
+        double output = 0;
+        for (int i = order - 1; i < length; ++i) {
+            ngram = (ngram * 26 + text[i]) % size;
+            output += scores[ngram];
+        }
+
+        return output;
+    }
+
+}
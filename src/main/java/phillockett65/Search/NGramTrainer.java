@@ -0,0 +1,368 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * NGramTrainer is a class that builds NGramTables from large plain text
+ * corpora. The corpus is streamed by a single reader into large chunks that
+ * are cut at whitespace, and a pool of workers normalises each chunk to
+ * Enigma conventions and counts the bigrams to pentagrams in per-thread
+ * primitive arrays. The per-thread counts are merged once all the chunks
+ * have been processed, or sooner if they could overflow. If a worker fails,
+ * the reader stops and train() reports the failure.
+ *
+ * Usage: NGramTrainer <output-prefix> <corpus-file>...
+ * writes <output-prefix>2.bin to <output-prefix>5.bin.
+ */
+package phillockett65.Search;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import phillockett65.Debug.Debug;
+import phillockett65.Stream.Normaliser;
+
+public class NGramTrainer {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    public static final int MIN_ORDER = 2;
+    public static final int MAX_ORDER = 5;
+
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    // Each worker holds about 50MB of counts, so limit the default.
+    private static final int DEFAULT_THREADS = 8;
+
+    // Normalised in slices so the letters buffer stays small.
+    private static final int SLICE_SIZE = 4096;
+
+    // A chunk adds a few million letters at most, so merging the per-thread
+    // counts after this many letters keeps them well clear of overflow.
+    private static final long MERGE_LIMIT = Integer.MAX_VALUE / 2;
+
+    private final int threads;
+    private final long[][] totals = new long[MAX_ORDER + 1][];
+
+
+    /************************************************************************
+     * Support code for the chunks passed from the reader to the workers.
+     */
+
+    private static class Chunk {
+        final char[] data = new char[CHUNK_SIZE];
+        int length = 0;
+    }
+
+    // Sent once to each worker to signal the end of the corpus.
+    private static final Chunk END = new Chunk();
+
+    // Returned by a failed worker in place of its chunk, to stop the reader.
+    private static final Chunk FAILED = new Chunk();
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param threads number of worker threads counting n-grams.
+     */
+    public NGramTrainer(int threads) {
+        this.threads = Math.max(threads, 1);
+
+        for (int order = MIN_ORDER; order <= MAX_ORDER; ++order)
+            totals[order] = new long[NGramTable.tableSize(order)];
+    }
+
+    public NGramTrainer() {
+        this(Math.min(Runtime.getRuntime().availableProcessors(), DEFAULT_THREADS));
+    }
+
+
+    /************************************************************************
+     * Support code for the workers.
+     */
+
+    /**
+     * Worker normalises chunks of text and counts the n-grams. The
+     * normalisation state does not cross chunk boundaries, which is why the
+     * reader cuts chunks at whitespace.
+     */
+    private class Worker extends Thread {
+        private final BlockingQueue<Chunk> full;
+        private final BlockingQueue<Chunk> empty;
+        private final int[][] counts = new int[MAX_ORDER + 1][];
+        private final int[] sizes = new int[MAX_ORDER + 1];
+
+        private final Normaliser normaliser = new Normaliser();
+        private final char[] letters = new char[Normaliser.maxOutput(SLICE_SIZE)];
+
+        private int ngram;
+        private int have;
+        private long counted = 0;
+        private IOException failure = null;
+
+        Worker(BlockingQueue<Chunk> full, BlockingQueue<Chunk> empty) {
+            this.full = full;
+            this.empty = empty;
+            for (int order = MIN_ORDER; order <= MAX_ORDER; ++order) {
+                counts[order] = new int[NGramTable.tableSize(order)];
+                sizes[order] = counts[order].length;
+            }
+        }
+
+        private void count(int index) {
+            ngram = (ngram * 26 + index) % sizes[MAX_ORDER];
+            if (have < MAX_ORDER)
+                ++have;
+
+            for (int order = MIN_ORDER; order <= have; ++order)
+                counts[order][ngram % sizes[order]]++;
+        }
+
+        private void count(int from, int to) {
+            for (int i = from; i < to; ++i)
+                count(letters[i] - 'A');
+            counted += to - from;
+        }
+
+        private void process(Chunk chunk) {
+            ngram = 0;
+            have = 0;
+            normaliser.reset();
+
+            for (int from = 0; from < chunk.length; from += SLICE_SIZE) {
+                final int to = Math.min(from + SLICE_SIZE, chunk.length);
+                count(0, normaliser.normalise(chunk.data, from, to, letters, 0));
+            }
+            count(0, normaliser.finish(letters, 0));
+
+            if (counted >= MERGE_LIMIT)
+                merge(this);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Chunk chunk = full.take();
+                    if (chunk == END)
+                        break;
+
+                    try {
+                        process(chunk);
+                    } catch (RuntimeException e) {
+                        failure = new IOException("Worker failed: " + e, e);
+                        empty.put(FAILED);
+                        break;
+                    }
+                    empty.put(chunk);
+                }
+            } catch (InterruptedException e) {
+                failure = new IOException("Worker interrupted");
+            }
+        }
+    }
+
+
+    /************************************************************************
+     * Support code for the reader.
+     */
+
+    private static boolean isBreak(char c) {
+        return Character.isWhitespace(c);
+    }
+
+    /**
+     * Take an empty chunk.
+     * @throws IOException if a worker has failed.
+     */
+    private static Chunk take(BlockingQueue<Chunk> empty) throws IOException, InterruptedException {
+        final Chunk chunk = empty.take();
+        if (chunk == FAILED)
+            throw new IOException("Worker failed");
+
+        return chunk;
+    }
+
+    /**
+     * Read the corpus into chunks cut at whitespace and hand them to the
+     * workers.
+     */
+    private void read(Reader reader, BlockingQueue<Chunk> full, BlockingQueue<Chunk> empty)
+        throws IOException, InterruptedException {
+
+        Chunk chunk = take(empty);
+        while (true) {
+            final int count = reader.read(chunk.data, chunk.length, CHUNK_SIZE - chunk.length);
+            if (count == -1)
+                break;
+
+            chunk.length += count;
+            if (chunk.length < CHUNK_SIZE)
+                continue;
+
+            // Cut the chunk after the last whitespace and carry the rest over.
+            int cut = chunk.length;
+            while ((cut > 0) && !isBreak(chunk.data[cut - 1]))
+                --cut;
+            if (cut == 0)
+                cut = chunk.length;
+
+            Chunk nextChunk = take(empty);
+            nextChunk.length = chunk.length - cut;
+            System.arraycopy(chunk.data, cut, nextChunk.data, 0, nextChunk.length);
+            chunk.length = cut;
+
+            full.put(chunk);
+            chunk = nextChunk;
+        }
+
+        if (chunk.length > 0)
+            full.put(chunk);
+        else
+            empty.put(chunk);
+    }
+
+
+    /************************************************************************
+     * Support code for the public interface.
+     */
+
+    /**
+     * Count the n-grams of a UTF-8 encoded corpus file and add them to the
+     * totals. May be called for several files.
+     * @param path of the corpus file.
+     * @throws IOException if the file cannot be read or a worker fails, in 
+     * which case the totals are incomplete.
+     */
+    public void train(String path) throws IOException {
+        final int poolSize = threads * 2 + 1;
+        BlockingQueue<Chunk> full = new ArrayBlockingQueue<Chunk>(poolSize + threads);
+        BlockingQueue<Chunk> empty = new ArrayBlockingQueue<Chunk>(poolSize);
+        for (int i = 0; i < poolSize; ++i)
+            empty.add(new Chunk());
+
+        ArrayList<Worker> workers = new ArrayList<Worker>(threads);
+        for (int i = 0; i < threads; ++i) {
+            Worker worker = new Worker(full, empty);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+
+        IOException failure = null;
+        try (Reader reader = new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8)) {
+            read(reader, full, empty);
+        } catch (InterruptedException e) {
+            for (Worker worker : workers)
+                worker.interrupt();
+            Thread.currentThread().interrupt();
+            throw new IOException("Training interrupted");
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            for (int i = 0; i < threads; ++i)
+                full.add(END);
+        }
+
+        for (Worker worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Training interrupted");
+            }
+
+            // The failure of the worker explains why the reader stopped.
+            if (worker.failure != null)
+                failure = worker.failure;
+        }
+
+        if (failure != null)
+            throw failure;
+
+        for (Worker worker : workers)
+            merge(worker);
+
+        Debug.info(DD, "Trained on " + path);
+    }
+
+    /**
+     * Add the counts of a worker to the totals and clear them.
+     */
+    private synchronized void merge(Worker worker) {
+        for (int order = MIN_ORDER; order <= MAX_ORDER; ++order) {
+            final int[] counts = worker.counts[order];
+            final long[] total = totals[order];
+            for (int i = 0; i < counts.length; ++i)
+                total[i] += counts[i];
+            Arrays.fill(counts, 0);
+        }
+        worker.counted = 0;
+    }
+
+    /**
+     * Get the trained NGramTable of the given order.
+     * @param order of the n-grams (2..5).
+     * @return the NGramTable.
+     */
+    public NGramTable getTable(int order) {
+        return NGramTable.fromCounts(order, totals[order]);
+    }
+
+    /**
+     * Write all the trained NGramTables to disc.
+     * @param prefix of the file names, the order and ".bin" are appended.
+     * @throws IOException if a file cannot be written.
+     */
+    public void write(String prefix) throws IOException {
+        for (int order = MIN_ORDER; order <= MAX_ORDER; ++order)
+            getTable(order).write(prefix + order + ".bin");
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: NGramTrainer <output-prefix> <corpus-file>...");
+            System.exit(1);
+        }
+
+        NGramTrainer trainer = new NGramTrainer();
+        try {
+            for (int i = 1; i < args.length; ++i)
+                trainer.train(args[i]);
+
+            trainer.write(args[0]);
+        } catch (IOException e) {
+            Debug.critical(DD, e.getMessage());
+            System.exit(1);
+        }
+    }
+
+}
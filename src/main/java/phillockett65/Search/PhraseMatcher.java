@@ -0,0 +1,218 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * PhraseMatcher is a class that recognises dictionary words in candidate
+ * decrypts. It is an Aho-Corasick automaton over the 26 letter indices used
+ * by Mapper, compiled into a dense transition table so that a candidate is
+ * scanned in a single pass with no allocation. Each word contributes its
+ * length to the score of a candidate, so longer words count for more.
+ */
+package phillockett65.Search;
+
+import java.util.Arrays;
+
+public class PhraseMatcher {
+
+    // Typical vocabulary of German military traffic, in Enigma conventions.
+    private static final String[] DEFAULT_WORDS = {
+        "OBERKOMMANDO", "WEHRMACHT", "FUNKSPRUCH", "FUEHRER", "HAUPTQUARTIER",
+        "KOMMANDEUR", "KOMMANDANT", "GENERAL", "DIVISION", "REGIMENT",
+        "BATAILLON", "ARMEE", "KORPS", "STAB", "BEFEHL", "MELDUNG", "LAGE",
+        "FEIND", "ANGRIFF", "VERTEIDIGUNG", "STELLUNG", "FRONT", "ABSCHNITT",
+        "NORD", "SUED", "OST", "WEST", "UHR", "ZWO", "NULL", "EINS", "DREI",
+        "VIER", "FUENF", "SEQS", "SIEBEN", "ACHT", "NEUN", "GEHEIM",
+        "KRIEGSMARINE", "LUFTWAFFE", "FLIEGER", "PANZER", "INFANTERIE",
+        "ARTILLERIE", "WETTER", "BERICHT", "NACHSCHUB", "VERSTAERKUNG",
+        "EINHEIT", "TRUPPEN", "QUADRAT", "ANKUNFT", "ABFAHRT", "KURS",
+        "DRINGEND", "SOFORT", "ERBITTE", "MELDEN", "STOP",
+    };
+
+    private static final int ROOT = 0;
+
+    private int[] next;         // Dense transition table, state * 26 + index.
+    private int[] weight;       // Summed length of all words ending at state.
+    private int[] fail;
+    private int states;
+    private boolean built = false;
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor for an empty matcher.
+     */
+    public PhraseMatcher() {
+        next = new int[64 * 26];
+        weight = new int[64];
+        fail = new int[64];
+        Arrays.fill(next, -1);
+        states = 1;
+    }
+
+    /**
+     * Construct a matcher loaded with the default military vocabulary.
+     * @return the built matcher.
+     */
+    public static PhraseMatcher withDefaultWords() {
+        PhraseMatcher matcher = new PhraseMatcher();
+        for (String word : DEFAULT_WORDS)
+            matcher.add(word);
+        matcher.build();
+
+        return matcher;
+    }
+
+    private void grow() {
+        final int capacity = weight.length * 2;
+        final int old = next.length;
+
+        next = Arrays.copyOf(next, capacity * 26);
+        Arrays.fill(next, old, next.length, -1);
+        weight = Arrays.copyOf(weight, capacity);
+        fail = Arrays.copyOf(fail, capacity);
+    }
+
+    /**
+     * Add a word to the dictionary. Non-letters are ignored.
+     * @param word to add.
+     */
+    public void add(String word) {
+        if (built)
+            throw new IllegalStateException("PhraseMatcher already built");
+
+        int[] indices = Intercept.toIndices(word);
+        if (indices.length == 0)
+            return;
+
+        int state = ROOT;
+        for (int index : indices) {
+            final int slot = state * 26 + index;
+            if (next[slot] == -1) {
+                if (states == weight.length)
+                    grow();
+                next[slot] = states++;
+            }
+            state = next[slot];
+        }
+
+        weight[state] = indices.length;
+    }
+
+    /**
+     * Compile the trie into the automaton. Words cannot be added afterwards.
+     */
+    public void build() {
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+
+        for (int index = 0; index < 26; ++index) {
+            final int child = next[index];
+            if (child == -1) {
+                next[index] = ROOT;
+            } else {
+                fail[child] = ROOT;
+                queue[tail++] = child;
+            }
+        }
+
+        // Breadth first, so the fail state of every state is already complete.
+        while (head < tail) {
+            final int state = queue[head++];
+            weight[state] += weight[fail[state]];
+
+            for (int index = 0; index < 26; ++index) {
+                final int slot = state * 26 + index;
+                final int child = next[slot];
+                final int failNext = next[fail[state] * 26 + index];
+                if (child == -1) {
+                    next[slot] = failNext;
+                } else {
+                    fail[child] = failNext;
+                    queue[tail++] = child;
+                }
+            }
+        }
+
+        built = true;
+    }
+
+
+    /************************************************************************
+     * Matching support code.
+     */
+
+    public int getStateCount() { return states; }
+
+    /**
+     * Scan the text and sum the lengths of all dictionary words found,
+     * including overlapping words.
+     * @param text indices (0..25) to scan.
+     * @param length number of indices to scan.
+     * @return the score, 0 if no words were found.
+     */
+    public int score(int[] text, int length) {
+        if (!built)
+            throw new IllegalStateException("PhraseMatcher not built");
+
+        int state = ROOT;
+        int output = 0;
+        for (int i = 0; i < length; ++i) {
+            state = next[state * 26 + text[i]];
+            output += weight[state];
+        }
+
+        return output;
+    }
+
+    /**
+     * Confirm a candidate decrypt by the density of dictionary words in it.
+     * @param text indices (0..25) to scan.
+     * @param length number of indices to scan.
+     * @param coverage fraction (0..1) of the text that must be words.
+     * @return true if the candidate looks like plain text.
+     */
+    public boolean confirm(int[] text, int length, double coverage) {
+        return score(text, length) >= coverage * length;
+    }
+
+    /**
+     * Convenience method to score a String.
+     * @param text to scan.
+     * @return the score.
+     */
+    public int score(String text) {
+        int[] indices = Intercept.toIndices(text);
+
+        return score(indices, indices.length);
+    }
+
+    @Override
+    public String toString() {
+        return "PhraseMatcher [" +
+            "states=" + states +
+            ", built=" + built +
+            "]";
+    }
+
+}
@@ -0,0 +1,187 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * PlugboardSearch is a class that recovers the plugboard of a key list day by
+ * hill-climbing. Every candidate is scored jointly across all the messages of
+ * the day by a JointScorer, and a pair swap is kept only if it improves the
+ * combined score.
+ */
+package phillockett65.Search;
+
+import phillockett65.Enigma.Mapper;
+
+public class PlugboardSearch {
+
+    public static final int WIRE_COUNT = 10;
+
+    private final JointScorer scorer;
+    private final int maxPairs;
+
+    private int[] best;
+    private double bestScore;
+
+
+    /************************************************************************
+     * General support code.
+     */
+
+    /**
+     * Count the pairs in a map.
+     * @param map to check.
+     * @return the number of swapped pairs.
+     */
+    public static int countPairs(int[] map) {
+        int output = 0;
+        for (int i = 0; i < map.length; ++i)
+            if (map[i] > i)
+                ++output;
+
+        return output;
+    }
+
+    /**
+     * Convert a map to pairs captured as a string (e.g. "AB CD").
+     * @param map to convert.
+     * @return String representation of the pairs.
+     */
+    public static String toPairString(int[] map) {
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < map.length; ++i) {
+            if (map[i] > i) {
+                if (output.length() != 0)
+                    output.append(' ');
+                output.append(Mapper.indexToLetter(i)).append(Mapper.indexToLetter(map[i]));
+            }
+        }
+
+        return output.toString();
+    }
+
+    private static void unplug(int[] map, int a) {
+        final int b = map[a];
+        map[a] = a;
+        map[b] = b;
+    }
+
+    /**
+     * Apply a pair swap to the map. If a and b are connected they are
+     * disconnected, otherwise they are disconnected from any existing
+     * partners and connected to each other.
+     * @param map to update.
+     * @param a first letter index.
+     * @param b second letter index.
+     * @param limit maximum number of pairs allowed.
+     * @return true if the map was changed, false if the limit prevented it.
+     */
+    public static boolean swap(int[] map, int a, int b, int limit) {
+        if (map[a] == b) {
+            unplug(map, a);
+
+            return true;
+        }
+
+        unplug(map, a);
+        unplug(map, b);
+        if (countPairs(map) >= limit)
+            return false;
+
+        map[a] = b;
+        map[b] = a;
+
+        return true;
+    }
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param scorer used to score candidates across all messages.
+     * @param maxPairs maximum number of plugboard pairs (typically ten).
+     */
+    public PlugboardSearch(JointScorer scorer, int maxPairs) {
+        this.scorer = scorer;
+        this.maxPairs = maxPairs;
+    }
+
+    public PlugboardSearch(JointScorer scorer) {
+        this(scorer, WIRE_COUNT);
+    }
+
+
+    /************************************************************************
+     * Getters support code.
+     */
+
+    public int[] getBest() { return best.clone(); }
+    public double getBestScore() { return bestScore; }
+    public String getBestPairs() { return toPairString(best); }
+
+
+    /************************************************************************
+     * Search support code.
+     */
+
+    /**
+     * Hill-climb from the start plugboard until no single pair swap improves
+     * the joint score.
+     * @param start plugboard map to climb from.
+     * @return the best plugboard map found.
+     */
+    public int[] climb(int[] start) {
+        best = start.clone();
+        bestScore = scorer.score(best);
+
+        int[] candidate = new int[best.length];
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+
+            for (int a = 0; a < 26; ++a) {
+                for (int b = a + 1; b < 26; ++b) {
+                    System.arraycopy(best, 0, candidate, 0, best.length);
+                    if (!swap(candidate, a, b, maxPairs))
+                        continue;
+
+                    final double score = scorer.score(candidate);
+                    if (score > bestScore) {
+                        bestScore = score;
+                        System.arraycopy(candidate, 0, best, 0, best.length);
+                        improved = true;
+                    }
+                }
+            }
+        }
+
+        return best.clone();
+    }
+
+    /**
+     * Hill-climb from an empty plugboard.
+     * @return the best plugboard map found.
+     */
+    public int[] climb() {
+        return climb(Mapper.initThroughMap(26));
+    }
+
+}
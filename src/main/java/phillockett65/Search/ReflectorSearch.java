@@ -0,0 +1,256 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ReflectorSearch is a class that recovers the wiring of a CONFIGURABLE
+ * (field rewirable) reflector by hill-climbing over pair swaps, in the same
+ * way as PlugboardSearch recovers the plugboard.
+ *
+ * For a fixed rotor path and plugboard, the letter arriving at the reflector
+ * at each position does not depend on the reflector wiring. This is captured
+ * once per message, together with the path back from the reflector, so a
+ * candidate rewiring only updates the letters whose reflector input was
+ * rewired instead of re-running the whole pipeline.
+ */
+package phillockett65.Search;
+
+import java.util.ArrayList;
+
+import phillockett65.Enigma.Engine;
+import phillockett65.Enigma.Mapper;
+
+public class ReflectorSearch {
+
+    private final Engine base;
+    private final NGramTable table;
+    private final int[] plugboard;
+    private final ArrayList<Message> messages = new ArrayList<Message>();
+
+    private int[] best;
+    private double bestScore;
+
+
+    /************************************************************************
+     * Support code for the messages.
+     */
+
+    /**
+     * Message captures, for each letter, the reflector input and the path
+     * back from the reflector, plus the positions grouped by reflector input.
+     */
+    private class Message {
+        final int length;
+        final int[] input;          // Letter arriving at the reflector.
+        final int[] backward;       // position * 26 + reflector output.
+        final int[] plain;
+        final int[] positions;      // Positions grouped by reflector input.
+        final int[] starts = new int[27];
+
+        Message(int[] offsets, int[] cipher) {
+            length = cipher.length;
+            input = new int[length];
+            backward = new int[length * 26];
+            plain = new int[length];
+            positions = new int[length];
+
+            Engine engine = new Engine(base);
+            engine.setOffsets(offsets);
+            for (int i = 0; i < length; ++i) {
+                engine.advance();
+                input[i] = engine.forward(plugboard[cipher[i]]);
+                for (int index = 0; index < 26; ++index)
+                    backward[i * 26 + index] = plugboard[engine.backward(index)];
+            }
+
+            // Counting sort of the positions by reflector input.
+            for (int i = 0; i < length; ++i)
+                starts[input[i] + 1]++;
+            for (int letter = 0; letter < 26; ++letter)
+                starts[letter + 1] += starts[letter];
+            int[] fill = starts.clone();
+            for (int i = 0; i < length; ++i)
+                positions[fill[input[i]]++] = i;
+        }
+
+        void decipher(int[] reflector) {
+            for (int i = 0; i < length; ++i)
+                plain[i] = backward[i * 26 + reflector[input[i]]];
+        }
+
+        /**
+         * Update only the letters whose reflector input is the given letter.
+         */
+        void update(int[] reflector, int letter) {
+            for (int p = starts[letter]; p < starts[letter + 1]; ++p) {
+                final int i = positions[p];
+                plain[i] = backward[i * 26 + reflector[letter]];
+            }
+        }
+
+        double score() { return table.score(plain, length); }
+    }
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param engine with the recovered wheel order, rings and plugboard. Its
+     *               reflector is used as the default starting point.
+     * @param table n-gram table used for scoring.
+     */
+    public ReflectorSearch(Engine engine, NGramTable table) {
+        base = new Engine(engine);
+        base.setMetered(false);
+        this.table = table;
+        plugboard = engine.getPlugboardMap();
+    }
+
+    /**
+     * Add a message sent on the same day key.
+     * @param offsets start position of this message.
+     * @param text enciphered message.
+     */
+    public void add(int[] offsets, String text) {
+        messages.add(new Message(offsets, Intercept.toIndices(text)));
+    }
+
+
+    /************************************************************************
+     * Getters support code.
+     */
+
+    public int[] getBest() { return best.clone(); }
+    public double getBestScore() { return bestScore; }
+
+    /**
+     * Get the recovered wiring as the twelve pairs used by PairSelect, the
+     * thirteenth pair being assumed from the two remaining letters.
+     * @return list of pairs (e.g. "AB").
+     */
+    public ArrayList<String> getBestLinks() {
+        ArrayList<String> output = Mapper.splitWords(PlugboardSearch.toPairString(best));
+        output.remove(output.size() - 1);
+
+        return output;
+    }
+
+
+    /************************************************************************
+     * Search support code.
+     */
+
+    private double score() {
+        double output = 0;
+        for (Message message : messages)
+            output += message.score();
+
+        return output;
+    }
+
+    private void update(int a, int b, int c, int d) {
+        for (Message message : messages) {
+            message.update(best, a);
+            message.update(best, b);
+            message.update(best, c);
+            message.update(best, d);
+        }
+    }
+
+    private void connect(int a, int b) {
+        best[a] = b;
+        best[b] = a;
+    }
+
+    /**
+     * Try rewiring pairs (a, b) and (c, d) as (a, c) and (b, d), keeping the
+     * change only if it improves the joint score.
+     * @return true if the change was kept.
+     */
+    private boolean tryRewire(int a, int b, int c, int d) {
+        connect(a, c);
+        connect(b, d);
+        update(a, b, c, d);
+
+        final double score = score();
+        if (score > bestScore) {
+            bestScore = score;
+
+            return true;
+        }
+
+        connect(a, b);
+        connect(c, d);
+        update(a, b, c, d);
+
+        return false;
+    }
+
+    /**
+     * Hill-climb from the start reflector until no single rewiring of two
+     * pairs improves the joint score.
+     * @param start reflector map to climb from, must be 13 pairs.
+     * @return the best reflector map found.
+     */
+    public int[] climb(int[] start) {
+        best = start.clone();
+        for (Message message : messages)
+            message.decipher(best);
+        bestScore = score();
+
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+
+            for (int a = 0; a < 26; ++a) {
+                for (int c = a + 1; c < 26; ++c) {
+                    final int b = best[a];
+                    final int d = best[c];
+                    if ((b == c) || (b < a) || (d < c))
+                        continue;   // Same pair, or each pair visited once.
+
+                    if (tryRewire(a, b, c, d) || tryRewire(a, b, d, c))
+                        improved = true;
+                }
+            }
+        }
+
+        return best.clone();
+    }
+
+    /**
+     * Hill-climb from the reflector of the engine.
+     * @return the best reflector map found.
+     */
+    public int[] climb() {
+        return climb(base.getReflectorMap());
+    }
+
+    /**
+     * Build an Engine using the recovered reflector.
+     * @return the new Engine.
+     */
+    public Engine getBestEngine() {
+        return base.withReflector(best);
+    }
+
+}
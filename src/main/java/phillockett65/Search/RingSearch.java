@@ -0,0 +1,210 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * RingSearch is a class that recovers the ring settings once the wheel order,
+ * start positions and plugboard have been found (usually with the rings all
+ * at A). Moving a ring setting and the rotor offset together by the same
+ * amount leaves the wiring where it was and only moves the turnover point.
+ * So each candidate follows the known rotor path except where a different
+ * step point has moved a rotor, and only those letters are re-enciphered.
+ *
+ * The right ring changes when the middle rotor steps and the middle ring
+ * changes when the left rotor (and the double step) steps, so both are
+ * searched together. The left ring cannot be recovered this way, as moving it
+ * with the left offset produces exactly the same cipher.
+ */
+package phillockett65.Search;
+
+import java.util.ArrayList;
+
+import phillockett65.Enigma.Engine;
+
+public class RingSearch {
+
+    private final Engine base;
+    private final NGramTable table;
+    private final ArrayList<Message> messages = new ArrayList<Message>();
+
+    private int bestMiddle = 0;
+    private int bestRight = 0;
+    private double bestScore;
+    private long reenciphered = 0;
+
+
+    /************************************************************************
+     * Support code for the messages of the known rotor path.
+     */
+
+    private static int corePosition(Engine engine) {
+        return (engine.getCorePosition(Engine.LEFT) * 26 +
+            engine.getCorePosition(Engine.MIDDLE)) * 26 +
+            engine.getCorePosition(Engine.RIGHT);
+    }
+
+    /**
+     * Message captures the known rotor path of a single message: the core
+     * position of the rotors and the plain text at each letter.
+     */
+    private class Message {
+        final int[] start;
+        final int[] cipher;
+        final int[] core;
+        final int[] plain;
+        final int[] candidate;
+
+        Message(int[] offsets, int[] indices) {
+            start = offsets.clone();
+            cipher = indices;
+            core = new int[cipher.length];
+            plain = new int[cipher.length];
+            candidate = new int[cipher.length];
+
+            Engine engine = new Engine(base);
+            engine.setOffsets(start);
+            for (int i = 0; i < cipher.length; ++i) {
+                plain[i] = engine.translate(cipher[i]);
+                core[i] = corePosition(engine);
+            }
+        }
+
+        /**
+         * Decipher with the candidate engine, reusing the known plain text
+         * wherever the rotors are at the same core position.
+         */
+        double score(Engine engine, int middle, int right) {
+            int[] offsets = start.clone();
+            offsets[Engine.MIDDLE] += middle;
+            offsets[Engine.RIGHT] += right;
+            engine.setOffsets(offsets);
+
+            for (int i = 0; i < cipher.length; ++i) {
+                engine.advance();
+                if (corePosition(engine) == core[i]) {
+                    candidate[i] = plain[i];
+                } else {
+                    candidate[i] = engine.translateIndex(cipher[i]);
+                    ++reenciphered;
+                }
+            }
+
+            return table.score(candidate, cipher.length);
+        }
+    }
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param engine with the recovered wheel order, reflector and plugboard
+     *               and the ring settings used to find the start positions.
+     * @param table n-gram table used for scoring.
+     */
+    public RingSearch(Engine engine, NGramTable table) {
+        base = new Engine(engine);
+        base.setMetered(false);
+        this.table = table;
+    }
+
+    /**
+     * Add a message sent on the same day key.
+     * @param offsets recovered start position of this message.
+     * @param text enciphered message.
+     */
+    public void add(int[] offsets, String text) {
+        messages.add(new Message(offsets, Intercept.toIndices(text)));
+    }
+
+
+    /************************************************************************
+     * Getters support code.
+     */
+
+    public int getBestMiddleRing() { return (base.getRing(Engine.MIDDLE) + bestMiddle) % 26; }
+    public int getBestRightRing() { return (base.getRing(Engine.RIGHT) + bestRight) % 26; }
+    public double getBestScore() { return bestScore; }
+    public long getReencipheredCount() { return reenciphered; }
+
+    /**
+     * Get the start position of a message adjusted for the recovered rings.
+     * @param offsets start position found with the original rings.
+     * @return the adjusted start position.
+     */
+    public int[] adjustOffsets(int[] offsets) {
+        int[] output = offsets.clone();
+        output[Engine.MIDDLE] = (output[Engine.MIDDLE] + bestMiddle) % 26;
+        output[Engine.RIGHT] = (output[Engine.RIGHT] + bestRight) % 26;
+
+        return output;
+    }
+
+
+    /************************************************************************
+     * Search support code.
+     */
+
+    private double score(Engine engine, int middle, int right) {
+        double output = 0;
+        for (Message message : messages)
+            output += message.score(engine, middle, right);
+
+        return output;
+    }
+
+    /**
+     * Try every combination of middle and right ring settings, each with the
+     * matching offsets, and keep the best scoring.
+     * @return the Engine with the recovered ring settings.
+     */
+    public Engine search() {
+        bestMiddle = 0;
+        bestRight = 0;
+        bestScore = 0;
+        for (Message message : messages)
+            bestScore += table.score(message.plain, message.plain.length);
+
+        final int middleRing = base.getRing(Engine.MIDDLE);
+        final int rightRing = base.getRing(Engine.RIGHT);
+
+        for (int middle = 0; middle < 26; ++middle) {
+            Engine withMiddle = base.withRing(Engine.MIDDLE, middleRing + middle);
+
+            for (int right = 0; right < 26; ++right) {
+                if ((middle == 0) && (right == 0))
+                    continue;
+
+                Engine engine = withMiddle.withRing(Engine.RIGHT, rightRing + right);
+                final double score = score(engine, middle, right);
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestMiddle = middle;
+                    bestRight = right;
+                }
+            }
+        }
+
+        return base.withRing(Engine.MIDDLE, getBestMiddleRing())
+            .withRing(Engine.RIGHT, getBestRightRing());
+    }
+
+}
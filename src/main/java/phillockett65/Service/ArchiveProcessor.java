@@ -0,0 +1,369 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ArchiveProcessor is a class that enciphers the text in a compressed 
+ * archive, zip or gzip, into a new archive of the same kind in a single 
+ * pass, without extracting anything to disc. Decompression, enciphering and
+ * compression run as three stages on their own threads, connected by 
+ * bounded queues of blocks, so a large archive needs only a few megabytes 
+ * of memory and the stages overlap.
+ *
+ * Each zip member is a separate message, enciphered from the configured 
+ * rotor offsets, and keeps its name and time. A gzip file is a single 
+ * message. If any stage fails the others stop and the partial output is 
+ * deleted.
+ *
+ * Usage: ArchiveProcessor <input> <output> [settings file] [PASS|DROP|X]
+ */
+package phillockett65.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import phillockett65.Debug.Debug;
+import phillockett65.Enigma.DataStore2;
+import phillockett65.Enigma.Engine;
+import phillockett65.Enigma.Model;
+import phillockett65.Stream.EnigmaCipher;
+import phillockett65.Stream.NonLetters;
+
+public class ArchiveProcessor {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int QUEUE_SIZE = 16;
+    private static final long WAIT_MILLIS = 100;
+
+    private final Engine template;
+    private final NonLetters mode;
+
+
+    /************************************************************************
+     * Support code for the blocks passed between the stages.
+     */
+
+    /**
+     * Block is either the start of a member, a piece of its data or the end
+     * of the archive.
+     */
+    private static class Block {
+        final ZipEntry entry;
+        final byte[] data;
+        int length;
+
+        Block(ZipEntry entry, byte[] data, int length) {
+            this.entry = entry;
+            this.data = data;
+            this.length = length;
+        }
+
+        boolean isStart() { return entry != null; }
+        boolean isData() { return data != null; }
+    }
+
+    private static final Block END = new Block(null, null, 0);
+
+    /**
+     * Pipeline holds the queues and the first failure of a single run.
+     */
+    private static class Pipeline {
+        final BlockingQueue<Block> plain = new ArrayBlockingQueue<Block>(QUEUE_SIZE);
+        final BlockingQueue<Block> cipher = new ArrayBlockingQueue<Block>(QUEUE_SIZE);
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+
+        void fail(Exception e) {
+            failure.compareAndSet(null, e);
+        }
+
+        /**
+         * Put a block, giving up if another stage has failed, so that no 
+         * stage waits forever on a stage that has stopped.
+         */
+        void put(BlockingQueue<Block> queue, Block block) throws IOException, InterruptedException {
+            while (!queue.offer(block, WAIT_MILLIS, TimeUnit.MILLISECONDS))
+                if (failure.get() != null)
+                    throw new IOException("Stopped after another stage failed");
+        }
+
+        Block take(BlockingQueue<Block> queue) throws IOException, InterruptedException {
+            while (true) {
+                final Block block = queue.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                if (block != null)
+                    return block;
+                if (failure.get() != null)
+                    throw new IOException("Stopped after another stage failed");
+            }
+        }
+    }
+
+
+    /************************************************************************
+     * Support code for the stages.
+     */
+
+    private static boolean isZip(Path path) {
+        return path.getFileName().toString().toLowerCase().endsWith(".zip");
+    }
+
+    private static boolean isGzip(Path path) {
+        return path.getFileName().toString().toLowerCase().endsWith(".gz");
+    }
+
+    /**
+     * @param path of a file.
+     * @return true if the file name shows it is an archive that can be 
+     * processed, false otherwise.
+     */
+    public static boolean isArchive(Path path) {
+        return isZip(path) || isGzip(path);
+    }
+
+    private static void readData(InputStream in, Pipeline pipeline) throws IOException, InterruptedException {
+        while (true) {
+            final byte[] data = new byte[BLOCK_SIZE];
+            final int count = in.readNBytes(data, 0, BLOCK_SIZE);
+            if (count == 0)
+                break;
+
+            pipeline.put(pipeline.plain, new Block(null, data, count));
+        }
+    }
+
+    /**
+     * Decompression stage.
+     */
+    private static void read(Path input, Pipeline pipeline) {
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(input))) {
+            if (isZip(input)) {
+                try (ZipInputStream in = new ZipInputStream(file)) {
+                    ZipEntry entry;
+                    while ((entry = in.getNextEntry()) != null) {
+                        pipeline.put(pipeline.plain, new Block(entry, null, 0));
+                        if (!entry.isDirectory())
+                            readData(in, pipeline);
+                    }
+                }
+            } else {
+                try (GZIPInputStream in = new GZIPInputStream(file, BLOCK_SIZE)) {
+                    pipeline.put(pipeline.plain, new Block(new ZipEntry(input.getFileName().toString()), null, 0));
+                    readData(in, pipeline);
+                }
+            }
+            pipeline.put(pipeline.plain, END);
+        } catch (IOException | RuntimeException e) {
+            pipeline.fail(e);
+        } catch (InterruptedException e) {
+            pipeline.fail(e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Enciphering stage, which restarts the machine for each member.
+     */
+    private void encipher(Pipeline pipeline) {
+        try {
+            EnigmaCipher cipher = null;
+            while (true) {
+                final Block block = pipeline.take(pipeline.plain);
+                if (block.isStart() || (block == END)) {
+                    // Each member is a message in its own right.
+                    if (cipher != null)
+                        cipher.finish();
+                    if (block.isStart())
+                        cipher = new EnigmaCipher(template, mode);
+                } else
+                if (block.isData())
+                    block.length = cipher.translate(block.data, 0, block.length);
+
+                pipeline.put(pipeline.cipher, block);
+                if (block == END)
+                    break;
+            }
+        } catch (IOException | RuntimeException e) {
+            pipeline.fail(e);
+        } catch (InterruptedException e) {
+            pipeline.fail(e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ZipEntry copyEntry(ZipEntry entry) {
+        ZipEntry output = new ZipEntry(entry.getName());
+        final FileTime time = entry.getLastModifiedTime();
+        if (time != null)
+            output.setLastModifiedTime(time);
+        if (entry.getComment() != null)
+            output.setComment(entry.getComment());
+
+        return output;
+    }
+
+    /**
+     * Compression stage, run on the calling thread.
+     * @return the number of members written.
+     */
+    private static int write(Path output, boolean zip, Pipeline pipeline) throws IOException, InterruptedException {
+        int members = 0;
+        try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(output), BLOCK_SIZE)) {
+            final ZipOutputStream zipOut = zip ? new ZipOutputStream(file) : null;
+            final OutputStream out = zip ? zipOut : new GZIPOutputStream(file, BLOCK_SIZE);
+            try {
+                while (true) {
+                    final Block block = pipeline.take(pipeline.cipher);
+                    if (block == END)
+                        break;
+
+                    if (block.isStart()) {
+                        ++members;
+                        if (zip)
+                            zipOut.putNextEntry(copyEntry(block.entry));
+                    } else {
+                        out.write(block.data, 0, block.length);
+                    }
+                }
+            } finally {
+                out.close();
+            }
+        }
+
+        return members;
+    }
+
+    private static Thread start(Runnable stage, String name) {
+        Thread thread = new Thread(stage, name);
+        thread.setDaemon(true);
+        thread.start();
+
+        return thread;
+    }
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param template configuration and rotor offsets each message starts 
+     * from, which is copied for each message.
+     * @param mode for bytes that are not letters.
+     */
+    public ArchiveProcessor(Engine template, NonLetters mode) {
+        this.template = template;
+        this.mode = mode;
+    }
+
+    /**
+     * Encipher every member of an archive into a new archive of the same 
+     * kind. The output only appears, by renaming a temporary file, once it 
+     * is complete.
+     * @param input zip or gzip file.
+     * @param output file to create or replace.
+     * @return the number of members processed.
+     * @throws IOException if any stage fails.
+     */
+    public int process(Path input, Path output) throws IOException {
+        if (!isArchive(input))
+            throw new IOException("Not a zip or gzip file: " + input);
+
+        final long start = System.nanoTime();
+        final Path temp = output.resolveSibling("." + output.getFileName() + ".tmp");
+        final Pipeline pipeline = new Pipeline();
+
+        final Thread reader = start(() -> read(input, pipeline), "Archive reader");
+        final Thread encipherer = start(() -> encipher(pipeline), "Archive encipher");
+
+        int members = 0;
+        try {
+            members = write(temp, isZip(input), pipeline);
+        } catch (IOException | RuntimeException e) {
+            pipeline.fail(e);
+        } catch (InterruptedException e) {
+            pipeline.fail(e);
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            reader.join();
+            encipherer.join();
+        } catch (InterruptedException e) {
+            pipeline.fail(e);
+            Thread.currentThread().interrupt();
+        }
+
+        final Exception failure = pipeline.failure.get();
+        if (failure != null) {
+            Files.deleteIfExists(temp);
+            if (failure instanceof IOException)
+                throw (IOException)failure;
+
+            throw new IOException(failure.toString(), failure);
+        }
+
+        try {
+            Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        Debug.info(DD, "ArchiveProcessor: %d members from %s in %dms", members, input.getFileName(),
+            (System.nanoTime() - start) / 1000000);
+
+        return members;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: ArchiveProcessor <input> <output> [settings file] [PASS|DROP|X]");
+
+            return;
+        }
+
+        final String fileName = args.length > 2 ? args[2] : Model.DATAFILE;
+        final NonLetters mode = args.length > 3 ? NonLetters.valueOf(args[3].toUpperCase()) : NonLetters.PASS;
+
+        // The same fields DataStore1.pull() captures from the Model.
+        final Engine engine = DataStore2.load(fileName).buildEngine();
+        new ArchiveProcessor(engine, mode).process(Paths.get(args[0]), Paths.get(args[1]).toAbsolutePath());
+    }
+
+}
@@ -0,0 +1,261 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EncipherProcessor is a class that enciphers a stream of ASCII chunks as a
+ * Flow.Processor stage. It owns a copy of an Engine, so the rotors advance 
+ * continuously from one chunk to the next, exactly as if the whole stream 
+ * had been typed. Each chunk in gives one chunk out, of the same length, 
+ * with the letters replaced by upper case cipher letters and anything else 
+ * unchanged. 
+ *
+ * Nothing is buffered: demand from the Subscriber is passed straight on to 
+ * the upstream Subscription, and each chunk is enciphered on the thread 
+ * that delivers it. The processor has a single Subscriber and can only be 
+ * used once.
+ */
+package phillockett65.Service;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import phillockett65.Enigma.Engine;
+import phillockett65.Metrics.EngineMetrics;
+
+public class EncipherProcessor implements Flow.Processor<ByteBuffer, ByteBuffer> {
+
+    private final Engine engine;
+
+    private final AtomicReference<Flow.Subscriber<? super ByteBuffer>> subscriber =
+        new AtomicReference<Flow.Subscriber<? super ByteBuffer>>();
+    private volatile Flow.Subscription upstream = null;
+    private final AtomicLong pending = new AtomicLong(0);
+    private volatile boolean cancelled = false;
+
+    // Time spent enciphering the chunks, the stream is a single message.
+    private long nanos = 0;
+
+    // Guarded by this, so the Subscriber hears of the end exactly once.
+    private boolean ready = false;
+    private boolean terminated = false;
+    private Throwable error = null;
+
+
+    /************************************************************************
+     * Support code for the chunks.
+     */
+
+    /**
+     * Encipher the letters of a chunk into a new buffer, advancing the 
+     * Engine once for each letter.
+     * @param input chunk, from its position to its limit, which is consumed.
+     * @return the enciphered chunk, ready to read.
+     */
+    private ByteBuffer encipher(ByteBuffer input) {
+        final long start = System.nanoTime();
+        final ByteBuffer output = ByteBuffer.allocate(input.remaining());
+
+        int letters = 0;
+        while (input.hasRemaining()) {
+            final byte c = input.get();
+            int index = c - 'A';
+            if ((index < 0) || (index >= 26))
+                index = c - 'a';
+
+            if ((index < 0) || (index >= 26)) {
+                output.put(c);
+            } else {
+                output.put((byte)('A' + engine.translate(index)));
+                ++letters;
+            }
+        }
+        EngineMetrics.getInstance().letters(letters);
+        nanos += System.nanoTime() - start;
+
+        return output.flip();
+    }
+
+
+    /************************************************************************
+     * Support code for the demand.
+     */
+
+    /**
+     * Pass any demand received before the upstream Subscription on to it.
+     */
+    private void drain() {
+        final Flow.Subscription subscription = upstream;
+        if (subscription == null)
+            return;
+
+        final long n = pending.getAndSet(0);
+        if (n > 0)
+            subscription.request(n);
+    }
+
+    private void cancelUpstream() {
+        cancelled = true;
+        final Flow.Subscription subscription = upstream;
+        if (subscription != null)
+            subscription.cancel();
+    }
+
+    private void terminate(Throwable throwable) {
+        synchronized (this) {
+            if (terminated)
+                return;
+
+            terminated = true;
+            error = throwable;
+            if (!ready)
+                return;
+        }
+
+        finish();
+    }
+
+    private void finish() {
+        final Flow.Subscriber<? super ByteBuffer> output = subscriber.get();
+        if (error == null)
+            output.onComplete();
+        else
+            output.onError(error);
+    }
+
+    /**
+     * The Subscription given to the Subscriber.
+     */
+    private class Downstream implements Flow.Subscription {
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancelUpstream();
+                terminate(new IllegalArgumentException("Non-positive request: " + n));
+
+                return;
+            }
+
+            final Flow.Subscription subscription = upstream;
+            if (subscription != null) {
+                subscription.request(n);
+
+                return;
+            }
+
+            pending.accumulateAndGet(n, (a, b) -> (a + b < 0) ? Long.MAX_VALUE : a + b);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelUpstream();
+        }
+    }
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param engine with the configuration and rotor offsets to start from,
+     * used only by this processor from now on.
+     */
+    public EncipherProcessor(Engine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * @return the rotor offsets after the last chunk, only meaningful once 
+     * the stream has finished.
+     */
+    public int[] getOffsets() { return engine.getOffsets(); }
+
+
+    /************************************************************************
+     * Flow.Publisher support code.
+     */
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> output) {
+        Objects.requireNonNull(output);
+        if (!subscriber.compareAndSet(null, output)) {
+            output.onSubscribe(new Flow.Subscription() {
+                @Override public void request(long n) {}
+                @Override public void cancel() {}
+            });
+            output.onError(new IllegalStateException("EncipherProcessor already has a Subscriber"));
+
+            return;
+        }
+
+        output.onSubscribe(new Downstream());
+
+        synchronized (this) {
+            ready = true;
+            if (!terminated)
+                return;
+        }
+
+        finish();
+    }
+
+
+    /************************************************************************
+     * Flow.Subscriber support code.
+     */
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        Objects.requireNonNull(subscription);
+        if ((upstream != null) || cancelled) {
+            subscription.cancel();
+
+            return;
+        }
+
+        upstream = subscription;
+        drain();
+    }
+
+    @Override
+    public void onNext(ByteBuffer item) {
+        if (cancelled)
+            return;
+
+        subscriber.get().onNext(encipher(item));
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        terminate(Objects.requireNonNull(throwable));
+    }
+
+    @Override
+    public void onComplete() {
+        EngineMetrics.getInstance().message(nanos);
+        terminate(null);
+    }
+
+}
@@ -0,0 +1,462 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EncipherService is a class that serves the engine to other local tools 
+ * over HTTP, so that they can share one warm JVM instead of each starting 
+ * their own. It only listens on the loopback address.
+ *
+ *   POST /encipher  Encipher each line of the body as a separate message,
+ *   POST /decipher  starting at the same rotor offsets. Letters are 
+ *                   enciphered, anything else is passed through. One line
+ *                   is returned per message. Optional query parameters:
+ *                     day=N&quarter=Q  use key list entry N and indicator
+ *                                      group Q (0..3) instead of the 
+ *                                      current configuration.
+ *                     start=ABC        rotor offsets of the left, middle
+ *                                      and right rotors, or ABCD including
+ *                                      the slow rotor.
+ *   GET  /config    The configuration currently used.
+ *   GET  /keylist   The key list entry for ?day=N, or all days.
+ *
+ * Requests are handled by a fixed pool of threads. Each request copies the
+ * Engine it starts from, so the configuration can be replaced at any time
+ * without affecting requests in progress.
+ *
+ * Usage: EncipherService [port] [settings file]
+ */
+package phillockett65.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import phillockett65.Debug.Debug;
+import phillockett65.Enigma.DataStore2;
+import phillockett65.Enigma.Engine;
+import phillockett65.Enigma.EnigmaData;
+import phillockett65.Enigma.Mapper;
+import phillockett65.Enigma.Model;
+import phillockett65.Enigma.SettingsData;
+import phillockett65.Metrics.EngineMetrics;
+
+public class EncipherService {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    public static final int DEFAULT_PORT = 8649;
+
+    private static final int MAX_BODY = 16 * 1024 * 1024;
+    private static final String TEXT = "text/plain; charset=utf-8";
+
+    private final HttpServer server;
+    private final ExecutorService pool;
+    private final SettingsData[] keyList;
+
+    // Never advanced, only copied by each request.
+    private volatile Engine template;
+
+
+    /************************************************************************
+     * Support code for the request bodies.
+     */
+
+    /**
+     * Thrown for a request that can not be handled, with the HTTP status to
+     * return.
+     */
+    private static class RequestException extends Exception {
+        private static final long serialVersionUID = 202410180001L;
+
+        final int status;
+
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException, RequestException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+
+        try (InputStream in = exchange.getRequestBody()) {
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                if (body.size() + count > MAX_BODY)
+                    throw new RequestException(413, "Body larger than " + MAX_BODY + " bytes");
+                body.write(buffer, 0, count);
+            }
+        }
+
+        return body.toString(StandardCharsets.UTF_8);
+    }
+
+    private static HashMap<String, String> parseQuery(URI uri) {
+        HashMap<String, String> output = new HashMap<String, String>();
+        final String query = uri.getQuery();
+        if (query == null)
+            return output;
+
+        for (String parameter : query.split("&")) {
+            final int split = parameter.indexOf('=');
+            if (split > 0)
+                output.put(parameter.substring(0, split), parameter.substring(split + 1));
+        }
+
+        return output;
+    }
+
+    private static int parseInt(String value, String name, int min, int max) throws RequestException {
+        try {
+            final int output = Integer.parseInt(value);
+            if ((output >= min) && (output <= max))
+                return output;
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+
+        throw new RequestException(400, name + " must be " + min + ".." + max);
+    }
+
+    private SettingsData getKeyListEntry(String day) throws RequestException {
+        final SettingsData settings = keyList[parseInt(day, "day", 0, keyList.length - 1)];
+        if (settings == null)
+            throw new RequestException(404, "No key list entry for day " + day);
+
+        return settings;
+    }
+
+
+    /************************************************************************
+     * Support code for enciphering.
+     */
+
+    /**
+     * Build the Engine for a request, from the key list if requested, and 
+     * set the start offsets if given.
+     */
+    private Engine buildEngine(HashMap<String, String> query) throws RequestException {
+        Engine engine;
+
+        final String day = query.get("day");
+        if (day != null) {
+            final String quarter = query.getOrDefault("quarter", "0");
+            engine = Engine.fromSettings(getKeyListEntry(day), parseInt(quarter, "quarter", 0, 3));
+        } else {
+            final Engine current = template;
+            if (current == null)
+                throw new RequestException(503, "No configuration");
+            engine = new Engine(current);
+        }
+
+        final String start = query.get("start");
+        if (start != null) {
+            try {
+                engine.setStart(start);
+            } catch (IllegalArgumentException e) {
+                throw new RequestException(400, e.getMessage());
+            }
+        }
+
+        return engine;
+    }
+
+    /**
+     * Encipher each line of the text as a separate message, each starting at
+     * the offsets of the given Engine.
+     */
+    private static String encipher(Engine engine, String text) {
+        final int[] start = engine.getOffsets();
+        StringBuilder output = new StringBuilder(text.length());
+        int[] indices = new int[256];
+
+        int from = 0;
+        while (from < text.length()) {
+            int to = text.indexOf('\n', from);
+            if (to == -1)
+                to = text.length();
+
+            final String line = text.substring(from, (to > from) && (text.charAt(to - 1) == '\r') ? to - 1 : to);
+            if (indices.length < line.length())
+                indices = new int[line.length()];
+
+            int count = 0;
+            for (int i = 0; i < line.length(); ++i) {
+                final int index = Mapper.charToIndex(line.charAt(i));
+                if ((index >= 0) && (index < 26))
+                    indices[count++] = index;
+            }
+
+            // Each line is a message in its own right.
+            final long begin = System.nanoTime();
+            engine.setOffsets(start);
+            engine.translate(indices, 0, count);
+            EngineMetrics.getInstance().message(System.nanoTime() - begin);
+
+            count = 0;
+            for (int i = 0; i < line.length(); ++i) {
+                final char c = line.charAt(i);
+                final int index = Mapper.charToIndex(c);
+                if ((index >= 0) && (index < 26))
+                    output.append((char)Mapper.indexToChar(indices[count++]));
+                else
+                    output.append(c);
+            }
+            output.append('\n');
+
+            from = to + 1;
+        }
+
+        return output.toString();
+    }
+
+
+    /************************************************************************
+     * Support code for the text responses.
+     */
+
+    private static String pairs(int[] map) {
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < map.length; ++i) {
+            if (map[i] > i)
+                output.append(Mapper.indexToLetter(i)).append(Mapper.indexToLetter(map[i])).append(' ');
+        }
+
+        return output.toString().trim();
+    }
+
+    private static String describe(Engine engine) {
+        StringBuilder output = new StringBuilder();
+
+        output.append("fourthWheel=").append(engine.isFourthWheel()).append('\n');
+        output.append("wheels=");
+        for (int i = 0; i < Engine.ROTOR_COUNT; ++i)
+            output.append(i == 0 ? "" : " ").append(engine.getWheel(i));
+        output.append("\nrings=");
+        for (int i = 0; i < Engine.ROTOR_COUNT; ++i)
+            output.append(Mapper.indexToLetter(engine.getRing(i)));
+        output.append("\noffsets=");
+        for (int i = 0; i < Engine.ROTOR_COUNT; ++i)
+            output.append(Mapper.indexToLetter(engine.getOffset(i)));
+        output.append("\nreflector=").append(pairs(engine.getReflectorMap()));
+        output.append("\nplugboard=").append(pairs(engine.getPlugboardMap()));
+        output.append('\n');
+
+        return output.toString();
+    }
+
+    private static String describe(int day, SettingsData settings) {
+        StringBuilder output = new StringBuilder();
+
+        output.append(day).append(": wheels=");
+        for (int i = 1; i < Engine.ROTOR_COUNT; ++i)
+            output.append(i == 1 ? "" : " ").append(settings.getRotor(i));
+        output.append(" rings=");
+        for (int i = 1; i < Engine.ROTOR_COUNT; ++i)
+            output.append(Mapper.indexToLetter(settings.getRingSetting(i)));
+        output.append(" reflector=").append(settings.getReflector());
+        output.append(" plugboard=").append(settings.getPlugboard());
+        output.append(" indicators=");
+        for (int quarter = 0; quarter < 4; ++quarter) {
+            output.append(quarter == 0 ? "" : " ");
+            for (int i = 1; i < Engine.ROTOR_COUNT; ++i)
+                output.append(Mapper.indexToLetter(settings.getOffset(i, quarter)));
+        }
+        output.append('\n');
+
+        return output.toString();
+    }
+
+
+    /************************************************************************
+     * Support code for the request handlers.
+     */
+
+    private static void send(HttpExchange exchange, int status, String text) throws IOException {
+        final byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", TEXT);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) {
+        try {
+            send(exchange, status, message + "\n");
+        } catch (IOException e) {
+            Debug.major(DD, "EncipherService: " + e.getMessage());
+        }
+    }
+
+    private static void requireMethod(HttpExchange exchange, String method) throws RequestException {
+        if (!method.equals(exchange.getRequestMethod()))
+            throw new RequestException(405, "Use " + method);
+    }
+
+    private String handleEncipher(HttpExchange exchange) throws IOException, RequestException {
+        requireMethod(exchange, "POST");
+        final Engine engine = buildEngine(parseQuery(exchange.getRequestURI()));
+
+        return encipher(engine, readBody(exchange));
+    }
+
+    private String handleConfig(HttpExchange exchange) throws RequestException {
+        requireMethod(exchange, "GET");
+        final Engine current = template;
+        if (current == null)
+            throw new RequestException(503, "No configuration");
+
+        return describe(current);
+    }
+
+    private String handleKeyList(HttpExchange exchange) throws RequestException {
+        requireMethod(exchange, "GET");
+        final String day = parseQuery(exchange.getRequestURI()).get("day");
+        if (day != null) {
+            final SettingsData settings = getKeyListEntry(day);
+
+            return describe(Integer.parseInt(day), settings);
+        }
+
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < keyList.length; ++i)
+            if (keyList[i] != null)
+                output.append(describe(i, keyList[i]));
+
+        return output.toString();
+    }
+
+    private void handle(HttpExchange exchange) {
+        try {
+            final String path = exchange.getRequestURI().getPath();
+            String response;
+
+            if (path.equals("/encipher") || path.equals("/decipher"))
+                response = handleEncipher(exchange);
+            else
+            if (path.equals("/config"))
+                response = handleConfig(exchange);
+            else
+            if (path.equals("/keylist"))
+                response = handleKeyList(exchange);
+            else
+                throw new RequestException(404, "Unknown path " + path);
+
+            send(exchange, 200, response);
+        } catch (RequestException e) {
+            sendError(exchange, e.status, e.getMessage());
+        } catch (RuntimeException e) {
+            Debug.major(DD, "EncipherService: " + e);
+            sendError(exchange, 500, e.toString());
+        } catch (IOException e) {
+            Debug.major(DD, "EncipherService: " + e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Start the service on the loopback address.
+     * @param port to listen on, 0 for any free port.
+     * @param threads number of requests that can be handled at once.
+     * @param engine configuration to start with, not used by anything else.
+     * @throws IOException if the port cannot be opened.
+     */
+    public EncipherService(int port, int threads, Engine engine) throws IOException {
+        template = engine;
+        keyList = EnigmaData.getKeyList();
+
+        pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "Encipher service");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(pool);
+        server.start();
+
+        Debug.info(DD, "EncipherService listening on port %d", getPort());
+    }
+
+    public int getPort() { return server.getAddress().getPort(); }
+
+    /**
+     * Replace the configuration used by later requests.
+     * @param engine configuration, including the rotor offsets, not used by
+     * anything else.
+     */
+    public void configure(Engine engine) {
+        template = engine;
+    }
+
+    /**
+     * Stop accepting requests, wait briefly for those in progress, then 
+     * stop the threads.
+     */
+    public void close() {
+        server.stop(1);
+        pool.shutdown();
+        try {
+            pool.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        final String fileName = args.length > 1 ? args[1] : Model.DATAFILE;
+
+        final Engine engine = DataStore2.load(fileName).buildEngine();
+        new EncipherService(port, Runtime.getRuntime().availableProcessors(), engine);
+
+        // The request threads are daemons, so keep the JVM alive.
+        while (true) {
+            try {
+                Thread.sleep(Long.MAX_VALUE);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,437 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * HotFolder is a class that runs headless, watching an inbox directory and
+ * enciphering each traffic file that arrives into an outbox directory. As 
+ * the machine is reciprocal the same operation deciphers.
+ *
+ * The configuration for a file is given by "#key=value" lines at the top 
+ * of the file, or in a sidecar file with the same name plus ".profile", 
+ * which must arrive first. The header lines are not enciphered. Keys are:
+ *   profile=NAME     a profile from the ProfileStore.
+ *   day=N            key list entry N instead, with quarter=Q (0..3) to 
+ *                    select the indicator group for the rotor offsets.
+ *   start=ABC        rotor offsets, 3 or 4 letters.
+ *   nonletters=MODE  PASS, DROP or X, see NonLetters.
+ * Without profile or day the default settings file is used. Zip and gzip 
+ * archives are processed by an ArchiveProcessor and can only be configured 
+ * by a sidecar.
+ *
+ * The output is written to a temporary file and renamed into the outbox, 
+ * so it only appears once complete. Processed files are moved to "done" in
+ * the inbox, or to "failed" if they could not be processed. Producers should
+ * likewise rename complete files into the inbox. Files are processed on a 
+ * bounded pool; when it is full the watcher processes the next file itself,
+ * which holds back the intake.
+ *
+ * Usage: HotFolder <inbox> <outbox> [profile store] [settings file]
+ */
+package phillockett65.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import phillockett65.Debug.Debug;
+import phillockett65.Enigma.DataStore2;
+import phillockett65.Enigma.Engine;
+import phillockett65.Enigma.EnigmaData;
+import phillockett65.Enigma.Model;
+import phillockett65.Enigma.ProfileStore;
+import phillockett65.Enigma.SettingsData;
+import phillockett65.Stream.EnigmaWriter;
+import phillockett65.Stream.NonLetters;
+
+public class HotFolder {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    public static final String SIDECAR = ".profile";
+    public static final String DONE = "done";
+    public static final String FAILED = "failed";
+
+    private static final String TEMP = ".tmp";
+    private static final int QUEUE_SIZE = 64;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Path inbox;
+    private final Path outbox;
+    private final ProfileStore profiles;
+    private final Engine defaults;
+    private final SettingsData[] keyList;
+
+    private final ThreadPoolExecutor pool;
+    private final WatchService watcher;
+    private final Thread thread;
+    private final Set<Path> active = ConcurrentHashMap.newKeySet();
+
+    // Guarded by this, never advanced, only copied for each file.
+    private final HashMap<String, Engine> templates = new HashMap<String, Engine>();
+
+
+    /************************************************************************
+     * Support code for the configuration of a file.
+     */
+
+    /**
+     * Header holds the configuration read from the sidecar and header lines.
+     */
+    private static class Header {
+        String profile = null;
+        int day = -1;
+        int quarter = 0;
+        String start = null;
+        NonLetters nonLetters = NonLetters.PASS;
+
+        private static int parseInt(String value, String name) throws IOException {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IOException(name + " must be a number: " + value);
+            }
+        }
+
+        /**
+         * Apply a single "key=value" line, with or without a leading '#'.
+         */
+        void parse(String line) throws IOException {
+            line = line.startsWith("#") ? line.substring(1).trim() : line.trim();
+            if (line.isEmpty())
+                return;
+
+            final int split = line.indexOf('=');
+            if (split <= 0)
+                throw new IOException("Bad header line: " + line);
+
+            final String key = line.substring(0, split).trim();
+            final String value = line.substring(split + 1).trim();
+            switch (key) {
+                case "profile": profile = value; break;
+                case "day": day = parseInt(value, key); break;
+                case "quarter": quarter = parseInt(value, key); break;
+                case "start": start = value; break;
+                case "nonletters":
+                    try {
+                        nonLetters = NonLetters.valueOf(value.toUpperCase());
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException("nonletters must be PASS, DROP or X: " + value);
+                    }
+                    break;
+                default: throw new IOException("Unknown header key: " + key);
+            }
+        }
+    }
+
+    private synchronized Engine getProfile(String name) throws IOException {
+        if (profiles == null)
+            throw new IOException("No profile store for profile: " + name);
+
+        // Profiles may have been added or replaced since they were cached.
+        if (profiles.refresh())
+            templates.clear();
+
+        Engine template = templates.get(name);
+        if (template != null)
+            return template;
+
+        final DataStore2 store = profiles.load(name);
+        if (store == null)
+            throw new IOException("Unknown profile: " + name);
+
+        template = store.buildEngine();
+        templates.put(name, template);
+
+        return template;
+    }
+
+    /**
+     * Build the Engine for a file from its Header.
+     */
+    private Engine resolve(Header header) throws IOException {
+        Engine engine;
+        if (header.profile != null) {
+            engine = new Engine(getProfile(header.profile));
+        } else
+        if (header.day != -1) {
+            if ((header.day < 0) || (header.day >= keyList.length) || (keyList[header.day] == null))
+                throw new IOException("No key list entry for day " + header.day);
+            if ((header.quarter < 0) || (header.quarter > 3))
+                throw new IOException("quarter must be 0 to 3");
+            engine = Engine.fromSettings(keyList[header.day], header.quarter);
+        } else {
+            if (defaults == null)
+                throw new IOException("No profile given and no default settings");
+            engine = new Engine(defaults);
+        }
+
+        if (header.start != null) {
+            try {
+                engine.setStart(header.start);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+
+        return engine;
+    }
+
+
+    /************************************************************************
+     * Support code for processing a file.
+     */
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void archive(Path file, Path sidecar, String directory) {
+        try {
+            final Path target = inbox.resolve(directory);
+            move(file, target.resolve(file.getFileName()));
+            if (Files.exists(sidecar))
+                move(sidecar, target.resolve(sidecar.getFileName()));
+        } catch (IOException e) {
+            Debug.critical(DD, "HotFolder: " + e.getMessage());
+        }
+    }
+
+    private static Header readSidecar(Path sidecar) throws IOException {
+        Header header = new Header();
+        if (Files.exists(sidecar))
+            for (String line : Files.readAllLines(sidecar, StandardCharsets.UTF_8))
+                header.parse(line);
+
+        return header;
+    }
+
+    /**
+     * Encipher a file into the outbox, streaming the body through an 
+     * EnigmaWriter.
+     */
+    private void encipher(Path file, Path sidecar, Path temp) throws IOException {
+        Header header = readSidecar(sidecar);
+
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            // Peek at one character, so a long first body line is never 
+            // read as a possible header.
+            while (true) {
+                in.mark(1);
+                final int c = in.read();
+                in.reset();
+                if (c != '#')
+                    break;
+
+                header.parse(in.readLine());
+            }
+
+            final Engine engine = resolve(header);
+            try (Writer out = new EnigmaWriter(Files.newBufferedWriter(temp, StandardCharsets.UTF_8),
+                    engine, header.nonLetters)) {
+                final char[] buffer = new char[BUFFER_SIZE];
+                int count;
+                while ((count = in.read(buffer)) != -1)
+                    out.write(buffer, 0, count);
+            }
+        }
+    }
+
+    private void process(Path file) {
+        final Path sidecar = file.resolveSibling(file.getFileName() + SIDECAR);
+        final Path target = outbox.resolve(file.getFileName());
+        final Path temp = outbox.resolve("." + file.getFileName() + TEMP);
+
+        try {
+            final long start = System.nanoTime();
+            if (ArchiveProcessor.isArchive(file)) {
+                final Header header = readSidecar(sidecar);
+                new ArchiveProcessor(resolve(header), header.nonLetters).process(file, target);
+            } else {
+                encipher(file, sidecar, temp);
+                move(temp, target);
+            }
+            archive(file, sidecar, DONE);
+            Debug.info(DD, "HotFolder: %s in %dms", file.getFileName(), (System.nanoTime() - start) / 1000000);
+        } catch (IOException | RuntimeException e) {
+            Debug.critical(DD, "HotFolder: " + file.getFileName() + ": " + e.getMessage());
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException x) {
+                Debug.critical(DD, "HotFolder: " + x.getMessage());
+            }
+            archive(file, sidecar, FAILED);
+        } finally {
+            active.remove(file);
+        }
+    }
+
+
+    /************************************************************************
+     * Support code for the watcher.
+     */
+
+    private void submit(Path file) {
+        final String name = file.getFileName().toString();
+        if (name.startsWith(".") || name.endsWith(SIDECAR) || name.endsWith(TEMP))
+            return;
+
+        if (!Files.isRegularFile(file) || !active.add(file))
+            return;
+
+        pool.execute(() -> process(file));
+    }
+
+    /**
+     * Submit every file already in the inbox, at start up and whenever 
+     * events have been lost.
+     */
+    private void scan() {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(inbox)) {
+            for (Path file : files)
+                submit(file);
+        } catch (IOException e) {
+            Debug.critical(DD, "HotFolder: " + e.getMessage());
+        }
+    }
+
+    private void watch() {
+        scan();
+
+        try {
+            while (true) {
+                final WatchKey key = watcher.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                        scan();
+                    else
+                        submit(inbox.resolve((Path)event.context()));
+                }
+
+                if (!key.reset())
+                    break;
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed.
+        }
+    }
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Start watching the inbox, after first processing any files already 
+     * there.
+     * @param inbox directory to watch.
+     * @param outbox directory for the output.
+     * @param profiles store of named profiles, or null.
+     * @param defaults configuration for files without a profile, or null.
+     * @param threads number of files processed at once.
+     * @throws IOException if the directories cannot be set up.
+     */
+    public HotFolder(String inbox, String outbox, ProfileStore profiles, Engine defaults, int threads)
+        throws IOException {
+
+        this.inbox = Paths.get(inbox).toAbsolutePath();
+        this.outbox = Paths.get(outbox).toAbsolutePath();
+        this.profiles = profiles;
+        this.defaults = defaults;
+        keyList = EnigmaData.getKeyList();
+
+        Files.createDirectories(this.inbox.resolve(DONE));
+        Files.createDirectories(this.inbox.resolve(FAILED));
+        Files.createDirectories(this.outbox);
+
+        pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), runnable -> {
+                Thread thread = new Thread(runnable, "Hot folder");
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+        watcher = this.inbox.getFileSystem().newWatchService();
+        // A file renamed into the inbox is reported as created.
+        this.inbox.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+
+        thread = new Thread(this::watch, "Hot folder watcher");
+        thread.start();
+
+        Debug.info(DD, "HotFolder watching %s", this.inbox);
+    }
+
+    /**
+     * Stop watching and wait for the files in progress to finish.
+     */
+    public void close() {
+        try {
+            watcher.close();
+            thread.join();
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (IOException e) {
+            Debug.critical(DD, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: HotFolder <inbox> <outbox> [profile store] [settings file]");
+
+            return;
+        }
+
+        final ProfileStore profiles = args.length > 2 ? ProfileStore.open(args[2]) : null;
+        final String fileName = args.length > 3 ? args[3] : Model.DATAFILE;
+        final Engine defaults = Files.exists(Paths.get(fileName)) ? DataStore2.load(fileName).buildEngine() : null;
+
+        HotFolder folder = new HotFolder(args[0], args[1], profiles, defaults,
+            Runtime.getRuntime().availableProcessors());
+
+        // Runs until the process is stopped.
+        folder.thread.join();
+    }
+
+}
@@ -0,0 +1,140 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SharedMemoryChannel holds the layout of the memory-mapped channel file 
+ * shared by SharedMemoryServer and SharedMemoryClient, described in 
+ * SharedMemoryServer.
+ */
+package phillockett65.Service;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+abstract class SharedMemoryChannel {
+
+    static final int MAGIC = 0x454E3349;        // "EN3I"
+    static final int VERSION = 2;
+
+    static final int SLOT_COUNT = 8;
+    static final int PAYLOAD_SIZE = 12;
+    static final int CLAIM = 64;
+    static final int COMPLETED = 128;
+    static final int FIRST_SLOT = 256;
+
+    static final int SEQUENCE = 0;
+    static final int CONFIG = 8;
+    static final int START = 12;
+    static final int LENGTH = 16;
+    static final int STATUS = 20;
+    static final int SLOT_HEADER = 64;
+
+    static final int FREE = 0;
+    static final int WRITING = 1;
+    static final int REQUEST = 2;
+    static final int DONE = 3;
+
+    // Spinning only helps when the other end can run at the same time.
+    static final int SPIN_LIMIT = Runtime.getRuntime().availableProcessors() > 1 ? 10000 : 1;
+
+    static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    final FileChannel channel;
+    final MappedByteBuffer buffer;
+    final int slots;
+    final int payload;
+    final int stride;
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Map the channel file.
+     * @param channel open for reading and writing.
+     * @param slots number of slots, or 0 to read it from the file.
+     * @param payload largest message, or 0 to read it from the file.
+     * @throws IOException if the file cannot be mapped.
+     */
+    SharedMemoryChannel(FileChannel channel, int slots, int payload) throws IOException {
+        this.channel = channel;
+        try {
+            if (slots == 0) {
+                final MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, FIRST_SLOT);
+                header.order(ByteOrder.nativeOrder());
+                if ((header.getInt(0) != MAGIC) || (header.getInt(4) != VERSION))
+                    throw new IOException("Not a shared memory channel");
+                slots = header.getInt(SLOT_COUNT);
+                payload = header.getInt(PAYLOAD_SIZE);
+            }
+
+            this.slots = slots;
+            this.payload = payload;
+            stride = SLOT_HEADER + ((payload + 63) & ~63);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FIRST_SLOT + (long)slots * stride);
+            buffer.order(ByteOrder.nativeOrder());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    void closeChannel() throws IOException {
+        channel.close();
+    }
+
+
+    /************************************************************************
+     * Support code for the slots.
+     */
+
+    /**
+     * @return the offset in the file of the slot used by ticket.
+     */
+    int slotBase(long ticket) {
+        return FIRST_SLOT + (int)(ticket % slots) * stride;
+    }
+
+    /**
+     * Wait for the SEQUENCE of a slot to reach a value, spinning before 
+     * parking. The SEQUENCE only increases, and may pass the value if the 
+     * server skips a stalled ticket.
+     * @return the SEQUENCE reached.
+     */
+    long await(int base, long sequence, long parkNanos) {
+        int idle = 0;
+        long current;
+        while ((current = (long)LONGS.getAcquire(buffer, base + SEQUENCE)) < sequence) {
+            if (++idle < SPIN_LIMIT)
+                Thread.onSpinWait();
+            else
+                LockSupport.parkNanos(this, parkNanos);
+        }
+
+        return current;
+    }
+
+}
@@ -0,0 +1,111 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SharedMemoryClient is a class that sends messages to a SharedMemoryServer
+ * through its memory-mapped channel file. Any number of clients, in any
+ * number of processes, can share a channel; each request claims the next
+ * ticket and waits for the server to complete it, spinning briefly before
+ * parking. A client may be used by more than one thread.
+ */
+package phillockett65.Service;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+public class SharedMemoryClient extends SharedMemoryChannel implements AutoCloseable {
+
+    private static final long WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(5);
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Open the channel file of a running SharedMemoryServer.
+     * @param fileName of the channel.
+     * @throws IOException if the file cannot be opened or is not a channel.
+     */
+    public SharedMemoryClient(String fileName) throws IOException {
+        super(FileChannel.open(Paths.get(fileName), StandardOpenOption.READ, StandardOpenOption.WRITE), 0, 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeChannel();
+    }
+
+    /**
+     * @return the largest message, in bytes, the server accepts.
+     */
+    public int getPayload() { return payload; }
+
+    /**
+     * Encipher the letters of a message in place. Letters of either case 
+     * are replaced by upper case letters, anything else is unchanged.
+     * @param message bytes of the message, as ASCII.
+     * @param length of the message, no more than getPayload().
+     * @param config CURRENT or a keyListConfig() value.
+     * @param start -1 to use the rotor offsets of the configuration, or a 
+     * packStart() value, which keeps the offset of the configuration for
+     * any rotor not given.
+     * @return OK, UNKNOWN_CONFIG, BAD_LENGTH or STALLED, in which case the
+     * message is unchanged and may be sent again.
+     */
+    public int encipher(byte[] message, int length, int config, int start) {
+        if ((length < 0) || (length > payload))
+            return SharedMemoryServer.BAD_LENGTH;
+
+        final long ticket = (long)LONGS.getAndAdd(buffer, CLAIM, 1L);
+        final int base = slotBase(ticket);
+
+        // The server skips the ticket if it is not taken in time.
+        final long free = ticket * 4 + FREE;
+        if ((await(base, free, WAIT_NANOS) != free) ||
+            !LONGS.compareAndSet(buffer, base + SEQUENCE, free, ticket * 4 + WRITING))
+            return SharedMemoryServer.STALLED;
+
+        buffer.putInt(base + CONFIG, config);
+        buffer.putInt(base + START, start);
+        buffer.putInt(base + LENGTH, length);
+        for (int i = 0; i < length; ++i)
+            buffer.put(base + SLOT_HEADER + i, message[i]);
+        LONGS.setRelease(buffer, base + SEQUENCE, ticket * 4 + REQUEST);
+
+        await(base, ticket * 4 + DONE, WAIT_NANOS);
+        final int status = buffer.getInt(base + STATUS);
+        if (status == SharedMemoryServer.OK)
+            for (int i = 0; i < length; ++i)
+                message[i] = buffer.get(base + SLOT_HEADER + i);
+        LONGS.setRelease(buffer, base + SEQUENCE, (ticket + slots) * 4 + FREE);
+
+        return status;
+    }
+
+    /**
+     * @return the number of requests completed by the server.
+     */
+    public long getCompleted() { return (long)LONGS.getAcquire(buffer, COMPLETED); }
+
+}
@@ -0,0 +1,352 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * SharedMemoryServer is a class that enciphers requests from other local
+ * processes through a ring of request slots in a memory-mapped file, for
+ * round trips that are too short to be worth an HTTP request. It has a
+ * single engine thread, which busy-spins while there is work and parks
+ * briefly when idle. SharedMemoryClient is the other end.
+ *
+ * File layout, all in native byte order:
+ *   0    MAGIC (int), VERSION (int), slot count (int), payload size (int).
+ *   64   CLAIM (long), the next ticket, taken by clients with getAndAdd.
+ *   128  COMPLETED (long), the number of tickets completed, or skipped, by
+ *        the server.
+ *   256  The slots, each SLOT_HEADER bytes followed by the payload:
+ *          SEQUENCE (long), CONFIG (int), START (int), LENGTH (int),
+ *          STATUS (int).
+ *
+ * Ticket t uses slot t % count. The SEQUENCE of the slot is t * 4 + state,
+ * where state is FREE, WRITING, REQUEST or DONE, so it only increases. A 
+ * client waits for FREE, takes the slot by changing it to WRITING, writes 
+ * the request and publishes REQUEST. The server enciphers the letters of
+ * the payload in place, in ticket order, and publishes DONE. The client 
+ * reads the response and publishes FREE for ticket t + count.
+ *
+ * The server handles the tickets in order, so a client that claims a 
+ * ticket and then dies would block every later ticket. If a claimed ticket
+ * is still FREE after STALL_NANOS, the server skips it by publishing FREE 
+ * for ticket t + count, and a client that is only slow fails to take the 
+ * slot and returns STALLED. A client that dies while WRITING, or before it
+ * frees a DONE slot, still blocks the channel until the server is 
+ * restarted.
+ *
+ * CONFIG refers to a machine configuration held by the server: CURRENT is
+ * the configuration given by the Model (or the settings file), and 
+ * keyListConfig(day, quarter) is an entry of the key list. START holds a
+ * 5 bit offset for each rotor, SLOW in the lowest bits, as packed by 
+ * packStart(). A field of UNSET keeps the offset of the configuration, as
+ * Engine.setStart() does, so -1 uses all the offsets of the configuration.
+ *
+ * Usage: SharedMemoryServer <channel file> [settings file]
+ */
+package phillockett65.Service;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import phillockett65.Debug.Debug;
+import phillockett65.Enigma.DataStore2;
+import phillockett65.Enigma.Engine;
+import phillockett65.Enigma.EnigmaData;
+import phillockett65.Enigma.Model;
+import phillockett65.Enigma.SettingsData;
+import phillockett65.Metrics.EngineMetrics;
+
+public class SharedMemoryServer extends SharedMemoryChannel {
+
+    // Debug delta used to adjust the local logging level.
+    private static final int DD = 0;
+
+    public static final int DEFAULT_SLOTS = 64;
+    public static final int DEFAULT_PAYLOAD = 4096;
+
+    public static final int OK = 0;
+    public static final int UNKNOWN_CONFIG = 1;
+    public static final int BAD_LENGTH = 2;
+    public static final int STALLED = 3;
+
+    public static final int CURRENT = 0;
+    public static final int CONFIG_COUNT = 32 * 4;
+
+    public static final int UNSET = 0x1F;
+
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+    private static final long STALL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicReferenceArray<Engine> templates = new AtomicReferenceArray<Engine>(CONFIG_COUNT);
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // Only used by the engine thread.
+    private final Engine[] sources = new Engine[CONFIG_COUNT];
+    private final Engine[] engines = new Engine[CONFIG_COUNT];
+    private final int[][] offsets = new int[CONFIG_COUNT][];
+
+
+    /************************************************************************
+     * Support code for the request fields.
+     */
+
+    /**
+     * @param day of the key list.
+     * @param quarter indicator group (0..3) used for the rotor offsets.
+     * @return the CONFIG value of a key list entry.
+     */
+    public static int keyListConfig(int day, int quarter) { return day * 4 + quarter; }
+
+    /**
+     * Pack the rotor offsets for START. As with Engine.setStart(), the slow
+     * rotor keeps the offset of the configuration if only 3 letters are 
+     * given.
+     * @param letters offsets of the left, middle and right rotors, or 4 
+     * letters including the slow rotor.
+     * @return the packed offsets.
+     * @throws IllegalArgumentException if letters is not 3 or 4 letters.
+     */
+    public static int packStart(String letters) {
+        final int[] start = Engine.parseStart(letters);
+
+        int output = 0;
+        for (int id = 0; id < Engine.ROTOR_COUNT; ++id)
+            output |= (start[id] == -1 ? UNSET : start[id]) << (5 * id);
+
+        return output;
+    }
+
+
+    /************************************************************************
+     * Support code for the engine thread.
+     */
+
+    /**
+     * Get the Engine for a configuration, copying the template again if it
+     * has been replaced since the last request.
+     */
+    private Engine getEngine(int config) {
+        final Engine template = templates.get(config);
+        if (template == null)
+            return null;
+
+        if (template != sources[config]) {
+            sources[config] = template;
+            engines[config] = new Engine(template);
+            offsets[config] = template.getOffsets();
+        }
+
+        return engines[config];
+    }
+
+    private int process(int base) {
+        final int config = buffer.getInt(base + CONFIG);
+        final int start = buffer.getInt(base + START);
+        final int length = buffer.getInt(base + LENGTH);
+
+        if ((length < 0) || (length > payload))
+            return BAD_LENGTH;
+
+        final Engine engine = (config >= 0) && (config < CONFIG_COUNT) ? getEngine(config) : null;
+        if (engine == null)
+            return UNKNOWN_CONFIG;
+
+        for (int id = 0; id < Engine.ROTOR_COUNT; ++id) {
+            final int offset = (start >> (5 * id)) & 0x1F;
+            engine.setOffset(id, offset == UNSET ? offsets[config][id] : offset);
+        }
+
+        final long begin = System.nanoTime();
+        final int first = base + SLOT_HEADER;
+        int letters = 0;
+        for (int i = first; i < first + length; ++i) {
+            final int c = buffer.get(i);
+            int index = c - 'A';
+            if ((index < 0) || (index >= 26))
+                index = c - 'a';
+            if ((index < 0) || (index >= 26))
+                continue;
+
+            buffer.put(i, (byte)('A' + engine.translate(index)));
+            ++letters;
+        }
+        EngineMetrics.getInstance().message(letters, System.nanoTime() - begin);
+
+        return OK;
+    }
+
+    /**
+     * Check if a ticket has been claimed but not taken for STALL_NANOS, and
+     * if so, skip it by freeing the slot for the next ticket that uses it.
+     * @param claimed time the ticket was first seen claimed, or 0 if not.
+     * @return the time the ticket was first seen claimed, 0 if it is not 
+     * claimed, or -1 if it has been skipped.
+     */
+    private long checkStalled(int base, long ticket, long claimed) {
+        if (((long)LONGS.getAcquire(buffer, base + SEQUENCE) != ticket * 4 + FREE) ||
+            ((long)LONGS.getAcquire(buffer, CLAIM) <= ticket))
+            return 0;
+
+        final long now = System.nanoTime();
+        if (claimed == 0)
+            return now == 0 ? 1 : now;
+
+        if (now - claimed < STALL_NANOS)
+            return claimed;
+
+        if (!LONGS.compareAndSet(buffer, base + SEQUENCE, ticket * 4 + FREE, (ticket + slots) * 4 + FREE))
+            return 0;
+
+        Debug.info(DD, "SharedMemoryServer skipped stalled ticket %d", ticket);
+
+        return -1;
+    }
+
+    private void run() {
+        long next = (long)LONGS.getVolatile(buffer, COMPLETED);
+        long claimed = 0;
+        int idle = 0;
+
+        while (running) {
+            final int base = slotBase(next);
+            final long sequence = (long)LONGS.getAcquire(buffer, base + SEQUENCE);
+            if (sequence != next * 4 + REQUEST) {
+                if (++idle < SPIN_LIMIT) {
+                    Thread.onSpinWait();
+
+                    continue;
+                }
+
+                claimed = checkStalled(base, next, claimed);
+                if (claimed != -1) {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+
+                    continue;
+                }
+            } else {
+                buffer.putInt(base + STATUS, process(base));
+                LONGS.setRelease(buffer, base + SEQUENCE, next * 4 + DONE);
+            }
+
+            idle = 0;
+            claimed = 0;
+            ++next;
+            LONGS.setRelease(buffer, COMPLETED, next);
+        }
+    }
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Create the channel file, replacing any existing one, and start the 
+     * engine thread. The key list entries are available straight away.
+     * @param fileName of the channel.
+     * @param slots number of requests that can be queued.
+     * @param payload largest message, in bytes.
+     * @param engine CURRENT configuration, not used by anything else.
+     * @throws IOException if the file cannot be created.
+     */
+    public SharedMemoryServer(String fileName, int slots, int payload, Engine engine) throws IOException {
+        super(FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), slots, payload);
+
+        for (int slot = 0; slot < slots; ++slot)
+            LONGS.setRelease(buffer, FIRST_SLOT + slot * stride + SEQUENCE, (long)slot * 4 + FREE);
+        LONGS.setRelease(buffer, CLAIM, 0L);
+        LONGS.setRelease(buffer, COMPLETED, 0L);
+
+        buffer.putInt(4, VERSION);
+        buffer.putInt(SLOT_COUNT, slots);
+        buffer.putInt(PAYLOAD_SIZE, payload);
+        // Written last, so clients only open a complete channel.
+        buffer.putInt(0, MAGIC);
+
+        configure(CURRENT, engine);
+        final SettingsData[] keyList = EnigmaData.getKeyList();
+        for (int day = 0; (day < keyList.length) && (keyListConfig(day, 3) < CONFIG_COUNT); ++day) {
+            if (keyList[day] == null)
+                continue;
+            for (int quarter = 0; quarter < 4; ++quarter)
+                configure(keyListConfig(day, quarter), Engine.fromSettings(keyList[day], quarter));
+        }
+
+        thread = new Thread(this::run, "Shared memory engine");
+        thread.setDaemon(true);
+        thread.start();
+
+        Debug.info(DD, "SharedMemoryServer using %s", fileName);
+    }
+
+    /**
+     * Replace a configuration used by later requests.
+     * @param config to replace.
+     * @param engine configuration, including the rotor offsets, not used by
+     * anything else.
+     */
+    public void configure(int config, Engine engine) {
+        templates.set(config, engine);
+    }
+
+    /**
+     * Stop the engine thread and close the file. Requests still queued are
+     * not completed.
+     */
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+            closeChannel();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            Debug.critical(DD, e.getMessage());
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: SharedMemoryServer <channel file> [settings file]");
+
+            return;
+        }
+
+        final String fileName = args.length > 1 ? args[1] : Model.DATAFILE;
+        final Engine engine = DataStore2.load(fileName).buildEngine();
+        new SharedMemoryServer(args[0], DEFAULT_SLOTS, DEFAULT_PAYLOAD, engine);
+
+        // The engine thread is a daemon, so keep the JVM alive.
+        while (true) {
+            try {
+                Thread.sleep(Long.MAX_VALUE);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,179 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EnigmaCipher is the shared core of the Enigma stream adapters, also used 
+ * directly by pipelines that pass blocks between threads. It enciphers
+ * a block of characters or bytes in place, advancing its own copy of an 
+ * Engine, and remembers whether the last block ended part way through a run
+ * of non-letters. The output of a block is never longer than the input, so 
+ * no extra buffer is needed.
+ */
+package phillockett65.Stream;
+
+import phillockett65.Enigma.Engine;
+import phillockett65.Metrics.EncipherEvent;
+import phillockett65.Metrics.EngineMetrics;
+
+public final class EnigmaCipher {
+
+    public static final int BUFFER_SIZE = 8192;
+
+    private static final int X = 'X' - 'A';
+
+    private final Engine engine;
+    private final NonLetters mode;
+    private boolean gap = false;
+
+    // Letters enciphered in the current block, excluding passed characters.
+    private int letters = 0;
+
+    // Time spent on the blocks, the whole stream is counted as one message.
+    private long nanos = 0;
+    private boolean finished = false;
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param snapshot configuration and rotor offsets to start from, which 
+     * is copied.
+     * @param mode for characters that are not letters.
+     */
+    public EnigmaCipher(Engine snapshot, NonLetters mode) {
+        engine = new Engine(snapshot);
+        this.mode = mode;
+    }
+
+    public int[] getOffsets() { return engine.getOffsets(); }
+
+    /**
+     * Count the stream as a single message in the EngineMetrics, once the
+     * last block has been enciphered. Only the first call has any effect.
+     */
+    public void finish() {
+        if (finished)
+            return;
+
+        finished = true;
+        EngineMetrics.getInstance().message(nanos);
+    }
+
+
+    /************************************************************************
+     * Support code for the blocks.
+     */
+
+    private static int toIndex(int c) {
+        if ((c >= 'A') && (c <= 'Z'))
+            return c - 'A';
+        if ((c >= 'a') && (c <= 'z'))
+            return c - 'a';
+
+        return -1;
+    }
+
+    /**
+     * Translate a character, or return -1 if nothing is output for it.
+     * @param c the character, or unsigned byte, never negative.
+     */
+    private int translate(int c) {
+        final int index = toIndex(c);
+        if (index >= 0) {
+            gap = false;
+            ++letters;
+
+            return 'A' + engine.translate(index);
+        }
+
+        if (mode == NonLetters.PASS)
+            return c;
+
+        if ((mode == NonLetters.X) && !gap) {
+            gap = true;
+            ++letters;
+
+            return 'A' + engine.translate(X);
+        }
+
+        return -1;
+    }
+
+    /**
+     * Encipher a block of characters in place.
+     * @param buffer holding the block.
+     * @param from first position of the block.
+     * @param to position after the last of the block.
+     * @return position after the last output character.
+     */
+    public int translate(char[] buffer, int from, int to) {
+        EncipherEvent event = new EncipherEvent();
+        event.begin();
+        final long start = System.nanoTime();
+        letters = 0;
+
+        int output = from;
+        for (int i = from; i < to; ++i) {
+            final int c = translate(buffer[i]);
+            if (c != -1)
+                buffer[output++] = (char)c;
+        }
+
+        EngineMetrics.getInstance().letters(letters);
+        nanos += System.nanoTime() - start;
+        event.length = letters;
+        event.commit();
+
+        return output;
+    }
+
+    /**
+     * Encipher a block of ASCII bytes in place.
+     * @param buffer holding the block.
+     * @param from first position of the block.
+     * @param to position after the last of the block.
+     * @return position after the last output byte.
+     */
+    public int translate(byte[] buffer, int from, int to) {
+        EncipherEvent event = new EncipherEvent();
+        event.begin();
+        final long start = System.nanoTime();
+        letters = 0;
+
+        int output = from;
+        for (int i = from; i < to; ++i) {
+            // Unsigned, so 0xFF is not taken as -1, which means no output.
+            final int c = translate(buffer[i] & 0xFF);
+            if (c != -1)
+                buffer[output++] = (byte)c;
+        }
+
+        EngineMetrics.getInstance().letters(letters);
+        nanos += System.nanoTime() - start;
+        event.length = letters;
+        event.commit();
+
+        return output;
+    }
+
+}
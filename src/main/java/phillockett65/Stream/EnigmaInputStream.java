@@ -0,0 +1,133 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EnigmaInputStream is a class that enciphers the ASCII bytes read from 
+ * another InputStream. Each read fills the caller's buffer from the 
+ * underlying stream in one go and enciphers it in place.
+ */
+package phillockett65.Stream;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import phillockett65.Enigma.Engine;
+
+public class EnigmaInputStream extends FilterInputStream {
+
+    private final EnigmaCipher cipher;
+    private final byte[] single = new byte[1];
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param in InputStream of the text.
+     * @param snapshot configuration and rotor offsets to start from, which 
+     * is copied.
+     * @param mode for bytes that are not letters.
+     */
+    public EnigmaInputStream(InputStream in, Engine snapshot, NonLetters mode) {
+        super(in);
+        cipher = new EnigmaCipher(snapshot, mode);
+    }
+
+    /**
+     * Constructor that passes non-letters through unchanged.
+     * @param in InputStream of the text.
+     * @param snapshot configuration and rotor offsets to start from, which 
+     * is copied.
+     */
+    public EnigmaInputStream(InputStream in, Engine snapshot) {
+        this(in, snapshot, NonLetters.PASS);
+    }
+
+    /**
+     * @return the rotor offsets after the bytes read so far.
+     */
+    public int[] getOffsets() { return cipher.getOffsets(); }
+
+
+    /************************************************************************
+     * InputStream support code.
+     */
+
+    @Override
+    public int read() throws IOException {
+        final int count = read(single, 0, 1);
+
+        return count == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0)
+            return 0;
+
+        while (true) {
+            final int count = in.read(buffer, offset, length);
+            if (count == -1) {
+                cipher.finish();
+
+                return -1;
+            }
+
+            final int output = cipher.translate(buffer, offset, offset + count) - offset;
+            if (output > 0)
+                return output;
+        }
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0)
+            return 0;
+
+        // Skipped bytes must still advance the rotors.
+        final byte[] buffer = new byte[(int)Math.min(n, EnigmaCipher.BUFFER_SIZE)];
+        long skipped = 0;
+        while (skipped < n) {
+            final int count = read(buffer, 0, (int)Math.min(n - skipped, buffer.length));
+            if (count == -1)
+                break;
+            skipped += count;
+        }
+
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readlimit) {}
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+}
@@ -0,0 +1,107 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EnigmaReader is a class that enciphers the characters read from another
+ * Reader. Each read fills the caller's buffer from the underlying Reader in
+ * one go and enciphers it in place.
+ */
+package phillockett65.Stream;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import phillockett65.Enigma.Engine;
+
+public class EnigmaReader extends Reader {
+
+    private final Reader in;
+    private final EnigmaCipher cipher;
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param in Reader of the text.
+     * @param snapshot configuration and rotor offsets to start from, which 
+     * is copied.
+     * @param mode for characters that are not letters.
+     */
+    public EnigmaReader(Reader in, Engine snapshot, NonLetters mode) {
+        super(in);
+        this.in = in;
+        cipher = new EnigmaCipher(snapshot, mode);
+    }
+
+    /**
+     * Constructor that passes non-letters through unchanged.
+     * @param in Reader of the text.
+     * @param snapshot configuration and rotor offsets to start from, which 
+     * is copied.
+     */
+    public EnigmaReader(Reader in, Engine snapshot) {
+        this(in, snapshot, NonLetters.PASS);
+    }
+
+    /**
+     * @return the rotor offsets after the characters read so far.
+     */
+    public int[] getOffsets() { return cipher.getOffsets(); }
+
+
+    /************************************************************************
+     * Reader support code.
+     */
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        if (length == 0)
+            return 0;
+
+        synchronized (lock) {
+            while (true) {
+                final int count = in.read(buffer, offset, length);
+                if (count == -1) {
+                    cipher.finish();
+
+                    return -1;
+                }
+
+                final int output = cipher.translate(buffer, offset, offset + count) - offset;
+                if (output > 0)
+                    return output;
+            }
+        }
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        return in.ready();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
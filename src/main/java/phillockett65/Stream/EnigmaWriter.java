@@ -0,0 +1,137 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EnigmaWriter is a class that enciphers the characters written to it and
+ * passes them on to another Writer. Characters are collected in an internal
+ * buffer, which is enciphered in place and written in one go when it is 
+ * full, flushed or closed.
+ */
+package phillockett65.Stream;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import phillockett65.Enigma.Engine;
+
+public class EnigmaWriter extends Writer {
+
+    private final Writer out;
+    private final EnigmaCipher cipher;
+    private final char[] buffer = new char[EnigmaCipher.BUFFER_SIZE];
+    private int count = 0;
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param out Writer for the cipher text.
+     * @param snapshot configuration and rotor offsets to start from, which 
+     * is copied.
+     * @param mode for characters that are not letters.
+     */
+    public EnigmaWriter(Writer out, Engine snapshot, NonLetters mode) {
+        super(out);
+        this.out = out;
+        cipher = new EnigmaCipher(snapshot, mode);
+    }
+
+    /**
+     * Constructor that passes non-letters through unchanged.
+     * @param out Writer for the cipher text.
+     * @param snapshot configuration and rotor offsets to start from, which 
+     * is copied.
+     */
+    public EnigmaWriter(Writer out, Engine snapshot) {
+        this(out, snapshot, NonLetters.PASS);
+    }
+
+    /**
+     * @return the rotor offsets after the characters written so far, 
+     * including any not yet passed on.
+     */
+    public int[] getOffsets() {
+        synchronized (lock) {
+            return cipher.getOffsets();
+        }
+    }
+
+
+    /************************************************************************
+     * Writer support code.
+     */
+
+    private void flushBuffer() throws IOException {
+        if (count == 0)
+            return;
+
+        out.write(buffer, 0, cipher.translate(buffer, 0, count));
+        count = 0;
+    }
+
+    @Override
+    public void write(char[] input, int offset, int length) throws IOException {
+        synchronized (lock) {
+            while (length > 0) {
+                final int chunk = Math.min(length, buffer.length - count);
+                System.arraycopy(input, offset, buffer, count, chunk);
+                count += chunk;
+                offset += chunk;
+                length -= chunk;
+
+                if (count == buffer.length)
+                    flushBuffer();
+            }
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        synchronized (lock) {
+            buffer[count++] = (char)c;
+            if (count == buffer.length)
+                flushBuffer();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        synchronized (lock) {
+            flushBuffer();
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            try {
+                flushBuffer();
+                cipher.finish();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+}
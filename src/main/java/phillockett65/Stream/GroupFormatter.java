@@ -0,0 +1,164 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * GroupFormatter is a class that lays out letters in the traditional 5 
+ * letter groups, separated by spaces, with a fixed number of groups to a 
+ * line. Anything that is not a letter is skipped, so enciphered output with
+ * non-letters passed through can be formatted directly. The position in the
+ * current line carries over from one buffer to the next, and nothing is 
+ * allocated.
+ */
+package phillockett65.Stream;
+
+public class GroupFormatter {
+
+    public static final int GROUP_SIZE = 5;
+    public static final int DEFAULT_GROUPS = 10;
+
+    private final int lineSize;
+    private int count = 0;
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    /**
+     * Constructor.
+     * @param groups number of groups on each line.
+     */
+    public GroupFormatter(int groups) {
+        lineSize = Math.max(groups, 1) * GROUP_SIZE;
+    }
+
+    public GroupFormatter() {
+        this(DEFAULT_GROUPS);
+    }
+
+    /**
+     * @param length of the input.
+     * @return the space needed for the output of format() and finish().
+     */
+    public static int maxOutput(int length) {
+        return length * 2 + 1;
+    }
+
+
+    /************************************************************************
+     * Support code for the buffers.
+     */
+
+    private static boolean isLetter(int c) {
+        return ((c >= 'A') && (c <= 'Z')) || ((c >= 'a') && (c <= 'z'));
+    }
+
+    /**
+     * @return the separator to output before the next letter, or 0 if none.
+     */
+    private char separator() {
+        if (count == lineSize) {
+            count = 0;
+
+            return '\n';
+        }
+
+        return ((count > 0) && (count % GROUP_SIZE == 0)) ? ' ' : 0;
+    }
+
+    /**
+     * Format a block of characters.
+     * @param input holding the block.
+     * @param from first position of the block.
+     * @param to position after the last of the block.
+     * @param output for the groups, with space for maxOutput(to - from).
+     * @param position in output of the first character.
+     * @return position in output after the last character.
+     */
+    public int format(char[] input, int from, int to, char[] output, int position) {
+        for (int i = from; i < to; ++i) {
+            final char c = input[i];
+            if (!isLetter(c))
+                continue;
+
+            final char separator = separator();
+            if (separator != 0)
+                output[position++] = separator;
+            output[position++] = c;
+            ++count;
+        }
+
+        return position;
+    }
+
+    /**
+     * Format a block of ASCII bytes, as for characters.
+     * @param input holding the block.
+     * @param from first position of the block.
+     * @param to position after the last of the block.
+     * @param output for the groups, with space for maxOutput(to - from).
+     * @param position in output of the first byte.
+     * @return position in output after the last byte.
+     */
+    public int format(byte[] input, int from, int to, byte[] output, int position) {
+        for (int i = from; i < to; ++i) {
+            final byte c = input[i];
+            if (!isLetter(c))
+                continue;
+
+            final char separator = separator();
+            if (separator != 0)
+                output[position++] = (byte)separator;
+            output[position++] = c;
+            ++count;
+        }
+
+        return position;
+    }
+
+    /**
+     * End the last line, if anything has been output on it.
+     * @param output for the line end, with space for 1 character.
+     * @param position in output for the line end.
+     * @return position in output after the last character.
+     */
+    public int finish(char[] output, int position) {
+        if (count > 0)
+            output[position++] = '\n';
+        count = 0;
+
+        return position;
+    }
+
+    /**
+     * End the last line, if anything has been output on it.
+     * @param output for the line end, with space for 1 byte.
+     * @param position in output for the line end.
+     * @return position in output after the last byte.
+     */
+    public int finish(byte[] output, int position) {
+        if (count > 0)
+            output[position++] = '\n';
+        count = 0;
+
+        return position;
+    }
+
+}
@@ -0,0 +1,36 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * NonLetters selects what the Enigma stream adapters do with characters that
+ * are not letters. Letters of either case are always enciphered to upper 
+ * case letters.
+ */
+package phillockett65.Stream;
+
+public enum NonLetters {
+    /** Copy them to the output unchanged, without advancing the rotors. */
+    PASS,
+    /** Leave them out of the output. */
+    DROP,
+    /** Replace each run of them with a single X, enciphered like any letter,
+     * as operators did for spaces and punctuation. */
+    X
+}
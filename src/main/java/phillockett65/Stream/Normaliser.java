@@ -0,0 +1,251 @@
+/*  Enigma3 - a JavaFX based enigma machine simulator.
+ *
+ *  Copyright 2024 Philip Lockett.
+ *
+ *  This file is part of Enigma3.
+ *
+ *  Enigma3 is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Enigma3 is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Enigma3.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Normaliser is a class that turns ordinary text into the letters an Enigma
+ * operator would have typed, following the usual conventions: letters are 
+ * upper cased, umlauts become AE, OE and UE, ß becomes SS, digits are spelt 
+ * out in German, CH becomes Q and each run of spaces and punctuation becomes
+ * a single X. Other foreign letters are dropped.
+ *
+ * Characters below 256 are classified by a precomputed lookup table, so a 
+ * buffer is normalised without any allocation. The state, a pending C and 
+ * whether the last output was a separator, carries over from one buffer to
+ * the next, so a stream can be normalised in blocks of any size. Byte 
+ * buffers are taken to be ISO-8859-1; decode UTF-8 to chars first.
+ */
+package phillockett65.Stream;
+
+public class Normaliser {
+
+    // Longest output for a single input character, "SIEBEN".
+    public static final int MAX_EXPANSION = 6;
+
+    private static final int SEPARATOR = 26;
+    private static final int DROP = 27;
+    private static final int EXPAND = 32;
+
+    private static final int C = 'C' - 'A';
+    private static final int H = 'H' - 'A';
+
+    private static final String[] DIGITS = {
+        "NULL", "EINS", "ZWO", "DREI", "VIER", "FUENF", "SEQS", "SIEBEN", "ACHT", "NEUN"
+    };
+
+    private static final char[][] EXPANSIONS = new char[DIGITS.length + 4][];
+    private static final byte[] TABLE = new byte[256];
+
+    private final char[] staged = new char[MAX_EXPANSION + 1];
+    private int stagedCount = 0;
+
+    private boolean separated = true;
+    private boolean pendingC = false;
+
+
+    /************************************************************************
+     * Support code for the lookup table.
+     */
+
+    private static void expansion(int c, int k, String letters) {
+        EXPANSIONS[k] = letters.toCharArray();
+        TABLE[c] = (byte)(EXPAND + k);
+    }
+
+    static {
+        for (int c = 0; c < 256; ++c)
+            TABLE[c] = (byte)(Character.isLetter(c) ? DROP : SEPARATOR);
+
+        for (int i = 0; i < 26; ++i) {
+            TABLE['A' + i] = (byte)i;
+            TABLE['a' + i] = (byte)i;
+        }
+
+        for (int d = 0; d < DIGITS.length; ++d)
+            expansion('0' + d, d, DIGITS[d]);
+
+        int k = DIGITS.length;
+        expansion('Ä', k, "AE");
+        TABLE['ä'] = TABLE['Ä'];
+        expansion('Ö', ++k, "OE");
+        TABLE['ö'] = TABLE['Ö'];
+        expansion('Ü', ++k, "UE");
+        TABLE['ü'] = TABLE['Ü'];
+        expansion('ß', ++k, "SS");
+    }
+
+    private static int classify(int c) {
+        if (c < 256)
+            return TABLE[c];
+
+        return Character.isLetter(c) ? DROP : SEPARATOR;
+    }
+
+
+    /************************************************************************
+     * Support code for the normalisation.
+     */
+
+    private void stage(char c) {
+        staged[stagedCount++] = c;
+        separated = false;
+    }
+
+    private void flushC() {
+        if (pendingC) {
+            pendingC = false;
+            stage('C');
+        }
+    }
+
+    /**
+     * Stage the output for a single input character.
+     */
+    private void step(int c) {
+        stagedCount = 0;
+
+        final int code = classify(c);
+        if (code == DROP)
+            return;
+
+        if (code == H && pendingC) {
+            pendingC = false;
+            stage('Q');
+
+            return;
+        }
+
+        flushC();
+
+        if (code == C) {
+            pendingC = true;
+            separated = false;
+        } else
+        if (code < SEPARATOR) {
+            stage((char)('A' + code));
+        } else
+        if (code == SEPARATOR) {
+            if (!separated)
+                stage('X');
+            separated = true;
+        } else {
+            for (char letter : EXPANSIONS[code - EXPAND])
+                stage(letter);
+        }
+    }
+
+
+    /************************************************************************
+     * Initialization support code.
+     */
+
+    public Normaliser() {
+    }
+
+    /**
+     * Forget any state carried over from earlier input, as at the start of a
+     * new message.
+     */
+    public void reset() {
+        separated = true;
+        pendingC = false;
+    }
+
+    /**
+     * @param length of the input.
+     * @return the space needed for the output of normalise() and finish().
+     */
+    public static int maxOutput(int length) {
+        return length * MAX_EXPANSION + 1;
+    }
+
+
+    /************************************************************************
+     * Support code for the buffers.
+     */
+
+    /**
+     * Normalise a block of characters. A C at the end of the block is held 
+     * back until the next block, or finish(), shows whether it is part of 
+     * CH.
+     * @param input holding the block.
+     * @param from first position of the block.
+     * @param to position after the last of the block.
+     * @param output for the letters, with space for maxOutput(to - from).
+     * @param position in output of the first letter.
+     * @return position in output after the last letter.
+     */
+    public int normalise(char[] input, int from, int to, char[] output, int position) {
+        for (int i = from; i < to; ++i) {
+            step(input[i]);
+            for (int j = 0; j < stagedCount; ++j)
+                output[position++] = staged[j];
+        }
+
+        return position;
+    }
+
+    /**
+     * Normalise a block of ISO-8859-1 bytes, as for characters.
+     * @param input holding the block.
+     * @param from first position of the block.
+     * @param to position after the last of the block.
+     * @param output for the letters, with space for maxOutput(to - from).
+     * @param position in output of the first letter.
+     * @return position in output after the last letter.
+     */
+    public int normalise(byte[] input, int from, int to, byte[] output, int position) {
+        for (int i = from; i < to; ++i) {
+            step(input[i] & 0xFF);
+            for (int j = 0; j < stagedCount; ++j)
+                output[position++] = (byte)staged[j];
+        }
+
+        return position;
+    }
+
+    /**
+     * Output a C held back at the end of the input and reset the state.
+     * @param output for the letter, with space for 1 letter.
+     * @param position in output for the letter.
+     * @return position in output after the last letter.
+     */
+    public int finish(char[] output, int position) {
+        if (pendingC)
+            output[position++] = 'C';
+        reset();
+
+        return position;
+    }
+
+    /**
+     * Output a C held back at the end of the input and reset the state.
+     * @param output for the letter, with space for 1 letter.
+     * @param position in output for the letter.
+     * @return position in output after the last letter.
+     */
+    public int finish(byte[] output, int position) {
+        if (pendingC)
+            output[position++] = 'C';
+        reset();
+
+        return position;
+    }
+
+}